@@ -1,9 +1,26 @@
 package cz.jpcz.houseplants;
 
+import cz.jpcz.houseplants.benchmark.PlantBenchmark;
+import cz.jpcz.houseplants.benchmark.PlantLoadTest;
+import cz.jpcz.houseplants.server.PlantHttpServer;
 import cz.jpcz.houseplants.test.DataTest;
 
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("benchmark")) {
+            PlantBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("loadtest")) {
+            PlantLoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            PlantHttpServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         System.out.println("Executing program in first portfolio project: Houseplants");
 
         DataTest.run();
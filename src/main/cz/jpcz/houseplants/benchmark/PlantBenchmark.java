@@ -0,0 +1,288 @@
+package cz.jpcz.houseplants.benchmark;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.ConcurrentPlantCollection;
+import cz.jpcz.houseplants.model.PlantChangeFeed;
+import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.WateringEvent;
+import cz.jpcz.houseplants.service.ExportCompression;
+import cz.jpcz.houseplants.service.PlantService;
+import cz.jpcz.houseplants.util.DebugManager;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark harness for parser, loading and saving, queries and sorting.
+ * <p>
+ * Every operation is warmed up and then measured over several iterations. For each operation
+ * throughput and allocation rate are reported. Allocations are measured on the benchmark thread
+ * only, work done by other threads (e.g. parallel loading) is not included.
+ * <pre>
+ * Usage: PlantBenchmark [number of plants...]   (default 10000 100000 1000000)
+ * </pre>
+ */
+public final class PlantBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long SEED = 42;
+    /**
+     * Date watering queries are evaluated for, so results don't depend on when the benchmark runs
+     */
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Keeps results of measured operations reachable, so they can't be optimized away
+     */
+    private static volatile Object sink;
+
+    private PlantBenchmark() {}
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0
+                ? new int[] {10_000, 100_000, 1_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        boolean debug = DebugManager.isDebug();
+        DebugManager.setDebug(false);
+        try {
+            for (int size : sizes) {
+                run(size);
+            }
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Benchmark failed: " + e.getMessage());
+        } finally {
+            DebugManager.setDebug(debug);
+        }
+    }
+
+    private static void run(int size) throws IOException, PlantException {
+        System.out.printf("%nBenchmark with %,d plants%n", size);
+        System.out.printf("%-44s %14s %14s %12s %10s%n", "operation", "ops/s", "B/op", "MB/s alloc", "gc ms");
+
+        List<String> lines = PlantDataGenerator.generateLines(size, SEED);
+        List<Plant> plants = PlantDataGenerator.generatePlants(size, SEED);
+        File file = File.createTempFile("plants-benchmark", ".txt");
+        File savedFile = File.createTempFile("plants-benchmark-saved", ".txt");
+        file.deleteOnExit();
+        savedFile.deleteOnExit();
+        PlantDataGenerator.generateFile(size, SEED, file);
+
+        measure("PlantParser.deserialize", size, () -> {
+            Plant last = null;
+            for (String line : lines) {
+                last = deserialize(line);
+            }
+            sink = last;
+        });
+        measure("PlantParser.serialize", size, () -> {
+            long length = 0;
+            for (Plant plant : plants) {
+                length += PlantParser.serialize(plant).length();
+            }
+            sink = length;
+        });
+        measure("PlantService.loadFromFile", size, () ->
+                sink = new PlantService().loadFromFile(file));
+        // Same operation with metrics off, the difference is the overhead of metrics
+        measure("PlantService.loadFromFile (no metrics)", size, () -> {
+            PlantService service = new PlantService();
+            service.getMetrics().setEnabled(false);
+            sink = service.loadFromFile(file);
+        });
+        measure("PlantService.loadFromFileParallel", size, () ->
+                sink = new PlantService().loadFromFileParallel(file, Runtime.getRuntime().availableProcessors()));
+
+        PlantService plantService = new PlantService(new PlantCollection(plants),
+                Clock.fixed(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+        measure("PlantService.saveToFile", size, () -> plantService.saveToFile(savedFile));
+        measure("PlantService.saveToFile (gzip fast)", size, () ->
+                plantService.saveToFile(savedFile, ExportCompression.GZIP_FAST));
+        measure("PlantService.getUnWateredPlants", size, () ->
+                sink = plantService.getUnWateredPlants());
+        plantService.getMetrics().setEnabled(false);
+        measure("PlantService.getUnWateredPlants (no metrics)", size, () ->
+                sink = plantService.getUnWateredPlants());
+        plantService.getMetrics().setEnabled(true);
+        measure("PlantService.getWateringReport", size, () ->
+                sink = plantService.getWateringReport());
+        measure("PlantCollection.getPlantsByCondition", size, () ->
+                sink = plantService.getPlantCollection().getPlantsByCondition(plant ->
+                        plant.getNextWateringDate().isAfter(TODAY)));
+        // Full-text search of notes compared with substring scan, each matches about a fifth of plants
+        measure("PlantCollection.getPlantsByNotes", size, () ->
+                sink = plantService.getPlantCollection().getPlantsByNotes("okne"));
+        measure("PlantCollection.getPlantsByCondition (notes)", size, () ->
+                sink = plantService.getPlantCollection().getPlantsByCondition(plant ->
+                        plant.getNotes().contains("okně")));
+
+        // Every iteration sorts freshly generated plants, so it never starts from an already sorted collection
+        List<PlantCollection> unsorted = new ArrayList<>();
+        measure("PlantCollection.sortByLastWateringDate", size,
+                () -> unsorted.add(new PlantCollection(generatePlants(size))),
+                () -> unsorted.remove(unsorted.size() - 1).sortPlantsByLastWateringDate());
+
+        // Plants are removed in random order, each of them looked up by its id
+        PlantCollection[] filled = new PlantCollection[1];
+        long[] ids = new long[size];
+        measure("PlantCollection.removePlantById", size, () -> {
+            filled[0] = new PlantCollection();
+            List<Plant> generated = generatePlants(size);
+            for (int i = 0; i < size; i++) {
+                ids[i] = filled[0].addPlant(generated.get(i));
+            }
+            Random random = new Random(SEED);
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long id = ids[i];
+                ids[i] = ids[j];
+                ids[j] = id;
+            }
+        }, () -> {
+            for (long id : ids) {
+                filled[0].removePlantById(id);
+            }
+        });
+
+        measureWatering("PlantCollection", new PlantCollection(generatePlants(size)), size);
+        measureWatering("ConcurrentPlantCollection", new ConcurrentPlantCollection(generatePlants(size)), size);
+        measureChangeFeed(size);
+    }
+
+    /**
+     * Measures cost of publishing changes and compares reading the last changes from the feed
+     * with copying all plants, which consumers without the feed diff to find changes
+     */
+    private static void measureChangeFeed(int size) {
+        PlantCollection collection = new PlantCollection(generatePlants(size));
+        PlantChangeFeed feed = collection.getChangeFeed();
+        List<Plant> plants = collection.getPlants();
+        LocalDate[] date = {TODAY};
+        measure("waterPlant loop with change feed", size, () -> {
+            date[0] = date[0].plusDays(1);
+            for (Plant plant : plants) {
+                collection.waterPlant(plant, date[0]);
+            }
+        });
+        long after = feed.getLastSequence() - 100;
+        // Polled many times per operation, a single poll is too short to be timed
+        measure("getChangesAfter (100 changes)", 100 * 1000, () -> {
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    sink = feed.getChangesAfter(after, 100);
+                }
+            } catch (PlantException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        measure("getPlants (copy to diff)", size, () -> sink = collection.getPlants());
+    }
+
+    /**
+     * Compares waterings applied one by one with the same waterings applied as one batch.
+     * Every iteration waters all plants a day later than the previous one, so each watering changes the plant.
+     */
+    private static void measureWatering(String collectionName, PlantCollection collection, int size) {
+        PlantService service = new PlantService(collection);
+        List<Plant> plants = service.getPlants();
+        LocalDate[] date = {TODAY};
+        measure("waterPlant loop (" + collectionName + ")", size, () -> {
+            date[0] = date[0].plusDays(1);
+            for (Plant plant : plants) {
+                service.getPlantCollection().waterPlant(plant, date[0]);
+            }
+        });
+        List<WateringEvent> events = new ArrayList<>(size);
+        measure("waterPlants batch (" + collectionName + ")", size, () -> {
+            events.clear();
+            date[0] = date[0].plusDays(1);
+            for (Plant plant : plants) {
+                events.add(new WateringEvent(plant, date[0]));
+            }
+        }, () -> {
+            try {
+                sink = service.waterPlants(events);
+            } catch (PlantException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static List<Plant> generatePlants(int size) {
+        try {
+            return PlantDataGenerator.generatePlants(size, SEED);
+        } catch (PlantException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Plant deserialize(String line) {
+        try {
+            return PlantParser.deserialize(line);
+        } catch (PlantException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void measure(String name, int plantsPerOperation, Runnable operation) {
+        measure(name, plantsPerOperation, () -> {}, operation);
+    }
+
+    /**
+     * Runs operation in warmup and measurement iterations, setup is run before every iteration
+     * and is not measured
+     * @param plantsPerOperation Number of plants processed by one run of the operation,
+     *                           results are reported per plant
+     */
+    private static void measure(String name, int plantsPerOperation, Runnable setup, Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            setup.run();
+            operation.run();
+        }
+
+        long elapsedNanos = 0;
+        long allocatedBytes = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            setup.run();
+            long gcBefore = gcMillis();
+            long allocatedBefore = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            operation.run();
+            elapsedNanos += System.nanoTime() - start;
+            allocatedBytes += THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            gcMillis += gcMillis() - gcBefore;
+        }
+
+        double operations = (double) plantsPerOperation * MEASUREMENT_ITERATIONS;
+        double seconds = elapsedNanos / 1_000_000_000d;
+        System.out.printf("%-44s %14.0f %14.1f %12.1f %10d%n", name,
+                operations / seconds,
+                allocatedBytes / operations,
+                allocatedBytes / seconds / (1024 * 1024),
+                gcMillis);
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,86 @@
+package cz.jpcz.houseplants.benchmark;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic plants in the shape of rows from kvetiny.txt
+ */
+public final class PlantDataGenerator {
+
+    private static final String[] NAMES = {
+            "Fialka", "Vánoční hvězda", "Sukulent v koupelně", "Kopretina", "Tulipán", "Růže", "Orchidej", "Fíkus"
+    };
+    private static final String[] NOTES = {
+            "Popis fialky - je fialová a hezká", "", "Nezalévá se", "Stojí na okně", "Hnojit jednou měsíčně"
+    };
+    private static final int[] INTERVALS = {2, 3, 4, 5, 7, 7, 14, 30, 365};
+    private static final LocalDate FIRST_DATE = LocalDate.of(2015, 1, 1);
+    private static final int DATE_RANGE_DAYS = 3650;
+
+    private PlantDataGenerator() {}
+
+    /**
+     * Generates one row in PlantParser format
+     * @param random Source of randomness
+     * @param index Index of the row, used to make names unique
+     * @return Row without line separator
+     */
+    public static String generateLine(Random random, int index) {
+        LocalDate plantedDate = FIRST_DATE.plusDays(random.nextInt(DATE_RANGE_DAYS));
+        LocalDate lastWateringDate = plantedDate.plusDays(random.nextInt(DATE_RANGE_DAYS));
+        return NAMES[random.nextInt(NAMES.length)] + " " + index + "\t"
+                + NOTES[random.nextInt(NOTES.length)] + "\t"
+                + INTERVALS[random.nextInt(INTERVALS.length)] + "\t"
+                + lastWateringDate + "\t"
+                + plantedDate;
+    }
+
+    public static List<String> generateLines(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(generateLine(random, i));
+        }
+        return lines;
+    }
+
+    public static List<Plant> generatePlants(int count, long seed) throws PlantException {
+        Random random = new Random(seed);
+        List<Plant> plants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            plants.add(PlantParser.deserialize(generateLine(random, i)));
+        }
+        return plants;
+    }
+
+    /**
+     * Writes generated rows to file
+     * @param count Number of rows
+     * @param seed Seed of the generator, same seed gives same file
+     * @param file Target file
+     * @return The target file
+     * @throws IOException if file can't be written
+     */
+    public static File generateFile(int count, long seed, File file) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(generateLine(random, i));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,199 @@
+package cz.jpcz.houseplants.benchmark;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.metrics.LatencyHistogram;
+import cz.jpcz.houseplants.model.ConcurrentPlantCollection;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.server.PlantHttpServer;
+import cz.jpcz.houseplants.service.PlantService;
+import cz.jpcz.houseplants.util.DebugManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of PlantHttpServer over localhost.
+ * <p>
+ * Clients run on virtual threads in a closed loop, each sends a request as soon as the previous one
+ * was answered. Requests are a mix of reads of cached reports, single plants and waterings, which
+ * invalidate the cache. After a warmup, latency percentiles and throughput of every kind of request
+ * are reported. Client and server share the machine, so results include the cost of the clients.
+ * <pre>
+ * Usage: PlantLoadTest [number of plants] [clients] [seconds]   (default 100000 64 10)
+ * </pre>
+ */
+public final class PlantLoadTest {
+
+    private static final long SEED = 42;
+    private static final int WARMUP_SECONDS = 3;
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+
+    /**
+     * Kind of request with its share of all requests in percent
+     */
+    private enum Request {
+        UNWATERED(35),
+        SEARCH(20),
+        LIST(15),
+        GET(25),
+        WATER(5);
+
+        private final int percent;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        Request(int percent) {
+            this.percent = percent;
+        }
+    }
+
+    private static final LatencyHistogram ALL_REQUESTS = new LatencyHistogram();
+    private static final String[] SEARCHES = {"notes=fialov%C3%A1", "notes=hnojit+m%C4%9Bs%C3%AD%C4%8Dn%C4%9B",
+            "any=okn%C4%9B+hezk%C3%A1", "prefix=nezal"};
+
+    private PlantLoadTest() {}
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        boolean debug = DebugManager.isDebug();
+        DebugManager.setDebug(false);
+        try {
+            run(size, clients, seconds);
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Load test failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            DebugManager.setDebug(debug);
+        }
+    }
+
+    private static void run(int size, int clients, int seconds)
+            throws IOException, PlantException, InterruptedException {
+        PlantService plantService = new PlantService(new ConcurrentPlantCollection(),
+                Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        long[] ids = new long[size];
+        List<Plant> plants = PlantDataGenerator.generatePlants(size, SEED);
+        for (int i = 0; i < size; i++) {
+            ids[i] = plantService.addPlant(plants.get(i));
+        }
+
+        try (PlantHttpServer server = new PlantHttpServer(plantService, 0)) {
+            server.start();
+            String base = "http://localhost:" + server.getPort() + "/plants";
+            System.out.printf("%nLoad test with %,d plants, %d clients, %d s%n", size, clients, seconds);
+
+            drive(base, ids, clients, WARMUP_SECONDS);
+            for (Request request : Request.values()) {
+                request.latencies.reset();
+                request.failures.reset();
+            }
+            ALL_REQUESTS.reset();
+            long hitsBefore = server.getCacheHits();
+            long missesBefore = server.getCacheMisses();
+            long elapsedNanos = drive(base, ids, clients, seconds);
+
+            System.out.printf("%-12s %10s %10s %10s %10s %10s %8s%n",
+                    "request", "count", "req/s", "p50 ms", "p99 ms", "max ms", "failed");
+            long failures = 0;
+            for (Request request : Request.values()) {
+                print(request.name().toLowerCase(), request.latencies, request.failures.sum(), elapsedNanos);
+                failures += request.failures.sum();
+            }
+            print("total", ALL_REQUESTS, failures, elapsedNanos);
+            long hits = server.getCacheHits() - hitsBefore;
+            long misses = server.getCacheMisses() - missesBefore;
+            System.out.printf("Cache hits %,d, misses %,d (%.1f %% hit rate)%n",
+                    hits, misses, hits + misses == 0 ? 0 : 100d * hits / (hits + misses));
+        }
+    }
+
+    /**
+     * Runs clients for given time
+     * @return Elapsed time in nanoseconds
+     */
+    private static long drive(String base, long[] ids, int clients, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < clients; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    send(client, base, ids);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return System.nanoTime() - start;
+    }
+
+    private static void send(HttpClient client, String base, long[] ids) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Request request = pick(random.nextInt(100));
+        String method = "GET";
+        String uri = switch (request) {
+            case UNWATERED -> base + "/unwatered";
+            case SEARCH -> base + "/search?" + SEARCHES[random.nextInt(SEARCHES.length)];
+            case LIST -> base + "?offset=" + random.nextInt(10) * PlantHttpServer.DEFAULT_LIMIT;
+            case GET -> base + "/" + ids[random.nextInt(ids.length)];
+            case WATER -> {
+                method = "POST";
+                yield base + "/" + ids[random.nextInt(ids.length)] + "/water?date=" + TODAY.plusDays(random.nextInt(30));
+            }
+        };
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(uri))
+                    .method(method, HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                request.failures.increment();
+            }
+        } catch (IOException e) {
+            request.failures.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        request.latencies.record(elapsed);
+        ALL_REQUESTS.record(elapsed);
+    }
+
+    private static Request pick(int percentile) {
+        int bound = 0;
+        for (Request request : Request.values()) {
+            bound += request.percent;
+            if (percentile < bound) {
+                return request;
+            }
+        }
+        return Request.GET;
+    }
+
+    private static void print(String name, LatencyHistogram latencies, long failures, long elapsedNanos) {
+        System.out.printf("%-12s %10d %10.0f %10.2f %10.2f %10.2f %8d%n", name,
+                latencies.getCount(),
+                latencies.getCount() / (elapsedNanos / 1_000_000_000d),
+                latencies.getPercentileNanos(50) / 1_000_000d,
+                latencies.getPercentileNanos(99) / 1_000_000d,
+                latencies.getMaxNanos() / 1_000_000d,
+                failures);
+    }
+}
@@ -0,0 +1,204 @@
+package cz.jpcz.houseplants.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters, latency histograms and collection size gauge of a PlantService.
+ * <p>
+ * Recording is lock-free. When metrics are disabled, startTimer() does not read the clock
+ * and record calls return immediately. Metrics can be read through JMX after registerMBean(),
+ * or as plain text from dump().
+ */
+public class PlantMetrics implements PlantMetricsMXBean {
+
+    /**
+     * Returned by startTimer() when metrics are disabled, recording it is a no-op
+     */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+    /**
+     * Only one of this many rows is timed when measuring deserialization, must be power of two
+     */
+    public static final int DESERIALIZE_SAMPLING = 64;
+
+    private static final String PREFIX = "houseplants_";
+    private static final double[] DUMPED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private volatile boolean enabled = true;
+    private final LongAdder plantsLoaded = new LongAdder();
+    private final LongAdder plantsRejected = new LongAdder();
+    private final LongAdder plantsSaved = new LongAdder();
+    private final Map<ServiceOperation, LatencyHistogram> latencies = new EnumMap<>(ServiceOperation.class);
+    private final IntSupplier collectionSize;
+    private ObjectName registeredName;
+
+    /**
+     * @param collectionSize Gauge of number of plants in the service's collection
+     */
+    public PlantMetrics(IntSupplier collectionSize) {
+        this.collectionSize = collectionSize;
+        for (ServiceOperation operation : ServiceOperation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @return Start time to be passed to record(), or NOT_TIMED if metrics are disabled
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * @return Start time for deserialization of given row, NOT_TIMED unless the row is sampled
+     */
+    public long startSampledTimer(long row) {
+        return (row & (DESERIALIZE_SAMPLING - 1)) == 0 ? startTimer() : NOT_TIMED;
+    }
+
+    /**
+     * Records latency of operation started at startNanos
+     */
+    public void record(ServiceOperation operation, long startNanos) {
+        if (startNanos != NOT_TIMED) {
+            latencies.get(operation).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void addLoaded(long plants) {
+        if (enabled) plantsLoaded.add(plants);
+    }
+    public void addRejected(long plants) {
+        if (enabled) plantsRejected.add(plants);
+    }
+    public void addSaved(long plants) {
+        if (enabled) plantsSaved.add(plants);
+    }
+
+    public LatencyHistogram getLatency(ServiceOperation operation) {
+        return latencies.get(operation);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getPlantsLoaded() {
+        return plantsLoaded.sum();
+    }
+    @Override
+    public long getPlantsRejected() {
+        return plantsRejected.sum();
+    }
+    @Override
+    public long getPlantsSaved() {
+        return plantsSaved.sum();
+    }
+    @Override
+    public int getCollectionSize() {
+        return collectionSize.getAsInt();
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        latencies.forEach((operation, histogram) -> counts.put(operation.getMetricName(), histogram.getCount()));
+        return counts;
+    }
+    @Override
+    public Map<String, Double> getOperationP99Millis() {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        latencies.forEach((operation, histogram) ->
+                percentiles.put(operation.getMetricName(), histogram.getPercentileNanos(99) / 1_000_000d));
+        return percentiles;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        writeText(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Writes metrics in Prometheus-like plain-text format, latencies in seconds
+     */
+    public void writeText(Appendable output) {
+        try {
+            counter(output, "plants_loaded_total", getPlantsLoaded());
+            counter(output, "plants_rejected_total", getPlantsRejected());
+            counter(output, "plants_saved_total", getPlantsSaved());
+            output.append("# TYPE ").append(PREFIX).append("collection_size gauge\n")
+                    .append(PREFIX).append("collection_size ").append(String.valueOf(getCollectionSize())).append('\n');
+
+            output.append("# TYPE ").append(PREFIX).append("operation_seconds summary\n");
+            for (Map.Entry<ServiceOperation, LatencyHistogram> entry : latencies.entrySet()) {
+                String operation = entry.getKey().getMetricName();
+                LatencyHistogram histogram = entry.getValue();
+                for (double percentile : DUMPED_PERCENTILES) {
+                    output.append(PREFIX).append("operation_seconds{operation=\"").append(operation)
+                            .append("\",quantile=\"").append(String.valueOf(percentile / 100)).append("\"} ")
+                            .append(seconds(histogram.getPercentileNanos(percentile))).append('\n');
+                }
+                output.append(PREFIX).append("operation_seconds_count{operation=\"").append(operation).append("\"} ")
+                        .append(String.valueOf(histogram.getCount())).append('\n');
+                output.append(PREFIX).append("operation_seconds_sum{operation=\"").append(operation).append("\"} ")
+                        .append(seconds(histogram.getSumNanos())).append('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void counter(Appendable output, String name, long value) throws IOException {
+        output.append("# TYPE ").append(PREFIX).append(name).append(" counter\n")
+                .append(PREFIX).append(name).append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000d);
+    }
+
+    @Override
+    public void reset() {
+        plantsLoaded.reset();
+        plantsRejected.reset();
+        plantsSaved.reset();
+        latencies.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * Registers metrics in the platform MBean server
+     * @param name Value of the name key of the object name, e.g. name of the service
+     * @throws JMException if name is invalid or already registered
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("cz.jpcz.houseplants:type=PlantMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package cz.jpcz.houseplants.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX interface of PlantMetrics
+ */
+public interface PlantMetricsMXBean {
+
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+
+    long getPlantsLoaded();
+    long getPlantsRejected();
+    long getPlantsSaved();
+    int getCollectionSize();
+
+    /**
+     * @return Number of measured calls by operation name
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * @return 99th percentile of latency in milliseconds by operation name
+     */
+    Map<String, Double> getOperationP99Millis();
+
+    /**
+     * @return All metrics in plain-text exposition format
+     */
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,27 @@
+package cz.jpcz.houseplants.metrics;
+
+/**
+ * Operations of PlantService whose latency is measured
+ */
+public enum ServiceOperation {
+    LOAD_FROM_FILE("loadFromFile"),
+    LOAD_FROM_FILE_PARALLEL("loadFromFileParallel"),
+    IMPORT_FROM_FILE("importFromFile"),
+    SAVE_TO_FILE("saveToFile"),
+    LOAD_SNAPSHOT("loadSnapshot"),
+    SAVE_SNAPSHOT("saveSnapshot"),
+    GET_UNWATERED_PLANTS("getUnWateredPlants"),
+    WATER_PLANTS("waterPlants"),
+    /** Sampled, only one of PlantMetrics.DESERIALIZE_SAMPLING rows read by the service is timed */
+    DESERIALIZE("deserialize");
+
+    private final String metricName;
+
+    ServiceOperation(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
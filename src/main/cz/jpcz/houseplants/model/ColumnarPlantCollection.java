@@ -0,0 +1,596 @@
+package cz.jpcz.houseplants.model;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Collection of Plants stored column by column in primitive arrays.
+ * Dates are kept as epoch days, watering intervals as days, and names and notes are interned
+ * while some plant holds them.
+ * <p>
+ * Plants returned by this collection are lightweight views of the columns and changes made
+ * through them are written straight into the columns. Views of the same plant are equal
+ * to each other, and a view becomes invalid once its plant is removed. Added plants are copied,
+ * so later changes of the original Plant object are not reflected in the collection.
+ * Slots are linked in collection order as in PlantCollection, so plants are removed without
+ * searching or shifting other plants. Lookups by name and full-text search of notes use indexes
+ * of slots built by their first query, which return plants ordered by slot and create views only
+ * for returned plants. Other queries scan the columns.
+ */
+public class ColumnarPlantCollection extends PlantCollection {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NONE = -1;
+
+    // Columns indexed by slot, slots of removed plants are reused
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] notes = new String[INITIAL_CAPACITY];
+    private int[] wateringIntervals = new int[INITIAL_CAPACITY];
+    private int[] plantedDays = new int[INITIAL_CAPACITY];
+    private int[] lastWateringDays = new int[INITIAL_CAPACITY];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int usedSlots;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeSlotCount;
+
+    // Slots linked in collection order
+    private int[] previous = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int first = NONE;
+    private int last = NONE;
+    private int size;
+    // Slots in collection order for index access and scans, rebuilt after the order changed
+    private int[] order = new int[INITIAL_CAPACITY];
+    private boolean orderValid = true;
+
+    private final Map<String, InternedString> internedStrings = new HashMap<>();
+    private NameIndex nameIndex;
+    private NotesIndex notesIndex;
+
+    public ColumnarPlantCollection(List<Plant> plants) {
+        super();
+        for (Plant plant : plants) {
+            add(plant);
+        }
+    }
+    public ColumnarPlantCollection() {
+        super();
+    }
+
+    /**
+     * @return Id made of the slot of the plant and generation of the slot
+     */
+    @Override
+    public long addPlant(Plant plant) {
+        int slot = add(plant);
+        firePlantAdded(new PlantView(slot), idOf(slot));
+        return idOf(slot);
+    }
+
+    /**
+     * Copies plant into a new slot without notifying listeners, so the constructor doesn't call
+     * overridable addPlant
+     * @return Slot of the plant
+     */
+    private int add(Plant plant) {
+        int slot = allocateSlot();
+        names[slot] = intern(plant.getName());
+        notes[slot] = intern(plant.getNotes());
+        wateringIntervals[slot] = toDays(plant.getWateringInterval());
+        plantedDays[slot] = toEpochDay(plant.getPlantedDate());
+        lastWateringDays[slot] = toEpochDay(plant.getLastWateringDate());
+
+        link(slot);
+        if (nameIndex != null) {
+            nameIndex.add(slot, names[slot]);
+        }
+        if (notesIndex != null) {
+            notesIndex.add(slot, notes[slot]);
+        }
+        return slot;
+    }
+
+    /**
+     * Removes plant, which has to be a view returned by this collection. Other plants are ignored.
+     */
+    @Override
+    public void removePlant(Plant plant) {
+        if (plant instanceof PlantView view && view.owner() == this && view.isValid()) {
+            removeSlot(view.slot);
+        }
+    }
+    @Override
+    boolean containsPlant(Plant plant) {
+        return plant instanceof PlantView view && view.owner() == this && view.isValid();
+    }
+    @Override
+    public boolean removePlantById(long id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+    @Override
+    public Plant getPlantById(long id) {
+        int slot = slotOf(id);
+        return slot < 0 ? null : new PlantView(slot);
+    }
+    @Override
+    public long getPlantId(Plant plant) {
+        return containsPlant(plant) ? idOf(((PlantView) plant).slot) : NO_ID;
+    }
+
+    private long idOf(int slot) {
+        return (long) generations[slot] << 32 | slot;
+    }
+
+    /**
+     * @return Slot of plant with given id, -1 if the id does not belong to a plant in the collection
+     */
+    private int slotOf(long id) {
+        int slot = (int) id;
+        if (slot < 0 || slot >= usedSlots || names[slot] == null || generations[slot] != (int) (id >>> 32)) {
+            return -1;
+        }
+        return slot;
+    }
+    @Override
+    public void removePlant(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        removeSlot(orderedSlots()[index]);
+    }
+
+    @Override
+    public Plant getPlant(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid plant index: " + index);
+        }
+        return new PlantView(orderedSlots()[index]);
+    }
+    @Override
+    public List<Plant> getPlants() {
+        List<Plant> plants = new ArrayList<>(size);
+        for (int slot = first; slot != NONE; slot = next[slot]) {
+            plants.add(new PlantView(slot));
+        }
+        return plants;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates views lazily as the stream is consumed
+     */
+    @Override
+    public Stream<Plant> stream() {
+        int[] slots = orderedSlots();
+        return IntStream.range(0, size).mapToObj(i -> new PlantView(slots[i]));
+    }
+
+    /**
+     * Evaluates condition on a single reused view, so a view is created only for matching plants.
+     * The condition must not keep references to the plant it is given.
+     */
+    @Override
+    public List<Plant> getPlantsByCondition(Predicate<Plant> condition) {
+        PlantView cursor = new PlantView(0);
+        List<Plant> plants = new ArrayList<>();
+        int[] slots = orderedSlots();
+        for (int i = 0; i < size; i++) {
+            cursor.moveTo(slots[i]);
+            if (condition.test(cursor)) {
+                plants.add(new PlantView(slots[i]));
+            }
+        }
+        return Collections.unmodifiableList(plants);
+    }
+
+    @Override
+    public List<Plant> getPlantsByName(String name) {
+        return nameIndex().get(name);
+    }
+    @Override
+    public List<String> getNamesByPrefix(String prefix, int limit) {
+        return nameIndex().namesByPrefix(prefix, limit);
+    }
+    @Override
+    public List<Plant> getPlantsByNamePrefix(String prefix, int limit) {
+        return nameIndex().plantsByPrefix(prefix, limit);
+    }
+    @Override
+    public List<Plant> getPlantsByNotes(String words) {
+        return notesIndex().allTerms(words);
+    }
+    @Override
+    public List<Plant> getPlantsByAnyNotes(String words) {
+        return notesIndex().anyTerm(words);
+    }
+    @Override
+    public List<Plant> getPlantsByNotesPrefix(String prefix) {
+        return notesIndex().termPrefix(prefix);
+    }
+
+    private NameIndex nameIndex() {
+        if (nameIndex == null) {
+            NameIndex index = new NameIndex(slot -> slot, PlantView::new);
+            for (int slot : slotsAscending()) {
+                index.add(slot, names[slot]);
+            }
+            nameIndex = index;
+        }
+        return nameIndex;
+    }
+
+    private NotesIndex notesIndex() {
+        if (notesIndex == null) {
+            NotesIndex index = new NotesIndex(slot -> slot, PlantView::new);
+            for (int slot : slotsAscending()) {
+                index.add(slot, notes[slot]);
+            }
+            notesIndex = index;
+        }
+        return notesIndex;
+    }
+
+    /**
+     * @return Slots of all plants in ascending order, in which indexes keep them
+     */
+    private int[] slotsAscending() {
+        int[] slots = Arrays.copyOf(orderedSlots(), size);
+        Arrays.sort(slots);
+        return slots;
+    }
+
+    @Override
+    public int removePlantsByName(String name) {
+        List<Plant> plants = nameIndex().get(name);
+        plants.forEach(this::removePlant);
+        return plants.size();
+    }
+
+    /**
+     * Scans the date and interval columns, most overdue plants come first
+     */
+    @Override
+    public List<Plant> getPlantsToWater(LocalDate date) {
+        return plantsDueBetween(Long.MIN_VALUE, date.toEpochDay());
+    }
+    @Override
+    public List<Plant> getPlantsDueWithin(LocalDate from, int days) {
+        return plantsDueBetween(from.toEpochDay(), from.toEpochDay() + days);
+    }
+
+    private List<Plant> plantsDueBetween(long fromDay, long toDay) {
+        int[] matches = new int[Math.min(size, 16)];
+        int count = 0;
+        int[] slots = orderedSlots();
+        for (int i = 0; i < size; i++) {
+            long nextWateringDay = nextWateringDay(slots[i]);
+            if (nextWateringDay >= fromDay && nextWateringDay < toDay) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = slots[i];
+            }
+        }
+        sortSlots(matches, count, (a, b) -> Long.compare(nextWateringDay(a), nextWateringDay(b)));
+
+        List<Plant> plants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            plants.add(new PlantView(matches[i]));
+        }
+        return plants;
+    }
+
+    @Override
+    public void sortPlantsByLastWateringDate() {
+        relink(sortedSlots((a, b) -> Integer.compare(lastWateringDays[a], lastWateringDays[b])));
+        firePlantsSorted(PlantProperty.LAST_WATERING_DATE);
+    }
+    @Override
+    public void sortPlantsByName() {
+        relink(sortedSlots((a, b) -> names[a].compareTo(names[b])));
+        firePlantsSorted(PlantProperty.NAME);
+    }
+
+    private long nextWateringDay(int slot) {
+        return (long) lastWateringDays[slot] + wateringIntervals[slot];
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (usedSlots == names.length) {
+            int capacity = usedSlots * 2;
+            names = Arrays.copyOf(names, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+            wateringIntervals = Arrays.copyOf(wateringIntervals, capacity);
+            plantedDays = Arrays.copyOf(plantedDays, capacity);
+            lastWateringDays = Arrays.copyOf(lastWateringDays, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return usedSlots++;
+    }
+
+    /**
+     * Appends slot to the end of collection order
+     */
+    private void link(int slot) {
+        previous[slot] = last;
+        next[slot] = NONE;
+        if (last == NONE) {
+            first = slot;
+        } else {
+            next[last] = slot;
+        }
+        last = slot;
+        if (orderValid) {
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size] = slot;
+        }
+        size++;
+    }
+
+    /**
+     * @return Slots sorted by comparator, stable with respect to collection order
+     */
+    private int[] sortedSlots(IntBinaryOperator comparator) {
+        int[] slots = orderedSlots();
+        sortSlots(slots, size, comparator);
+        return slots;
+    }
+
+    /**
+     * Links slots in order of given array, which becomes the collection order. The array may be
+     * the order array itself, linking then writes every slot back to its own position.
+     */
+    private void relink(int[] slots) {
+        int count = size;
+        first = NONE;
+        last = NONE;
+        size = 0;
+        orderValid = true;
+        for (int i = 0; i < count; i++) {
+            link(slots[i]);
+        }
+    }
+
+    /**
+     * @return Slots in collection order, valid until the order changes
+     */
+    private int[] orderedSlots() {
+        if (!orderValid) {
+            if (order.length < size) {
+                order = new int[Math.max(INITIAL_CAPACITY, size)];
+            }
+            int index = 0;
+            for (int slot = first; slot != NONE; slot = next[slot]) {
+                order[index++] = slot;
+            }
+            orderValid = true;
+        }
+        return order;
+    }
+
+    /**
+     * Unlinks slot from collection order and frees it
+     */
+    private void removeSlot(int slot) {
+        if (previous[slot] == NONE) {
+            first = next[slot];
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            last = previous[slot];
+        } else {
+            previous[next[slot]] = previous[slot];
+        }
+        size--;
+        orderValid = false;
+        firePlantRemoved(new PlantView(slot), idOf(slot));
+        if (nameIndex != null) {
+            nameIndex.remove(slot, names[slot]);
+        }
+        if (notesIndex != null) {
+            notesIndex.remove(slot, notes[slot]);
+        }
+
+        release(names[slot]);
+        release(notes[slot]);
+        names[slot] = null;
+        notes[slot] = null;
+        generations[slot]++;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private String intern(String string) {
+        InternedString interned = internedStrings.computeIfAbsent(string, InternedString::new);
+        interned.slots++;
+        return interned.value;
+    }
+
+    /**
+     * Called when a slot stops holding string, which is dropped once no slot holds it
+     */
+    private void release(String string) {
+        InternedString interned = internedStrings.get(string);
+        if (--interned.slots == 0) {
+            internedStrings.remove(string);
+        }
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        if (epochDay < Integer.MIN_VALUE || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Date out of supported range: " + date);
+        }
+        return (int) epochDay;
+    }
+
+    private static int toDays(Duration duration) {
+        long days = duration.toDays();
+        if (days > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Watering interval is too long: " + days + " days");
+        }
+        return (int) days;
+    }
+
+    /**
+     * Name or notes shared by slots, with the number of slots holding it
+     */
+    private static final class InternedString {
+
+        private final String value;
+        private int slots;
+
+        private InternedString(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Plant backed by one slot of the columns
+     */
+    private final class PlantView extends Plant {
+
+        private int slot;
+        private int generation;
+
+        private PlantView(int slot) {
+            moveTo(slot);
+        }
+
+        private void moveTo(int slot) {
+            this.slot = slot;
+            this.generation = generations[slot];
+        }
+
+        private ColumnarPlantCollection owner() {
+            return ColumnarPlantCollection.this;
+        }
+
+        private boolean isValid() {
+            return generations[slot] == generation;
+        }
+
+        private int slot() {
+            if (!isValid()) {
+                throw new IllegalStateException("Plant was removed from collection.");
+            }
+            return slot;
+        }
+
+        @Override
+        public String getName() {
+            return names[slot()];
+        }
+        @Override
+        public void setName(String name) {
+            int slot = slot();
+            String oldName = names[slot];
+            names[slot] = intern(name);
+            if (nameIndex != null) {
+                nameIndex.rename(slot, oldName, names[slot]);
+            }
+            release(oldName);
+            plantChanged(this, PlantProperty.NAME, oldName);
+        }
+        @Override
+        public Duration getWateringInterval() {
+            return Duration.ofDays(wateringIntervals[slot()]);
+        }
+        @Override
+        public void setWateringInterval(Duration wateringInterval) throws PlantException {
+            checkWateringInterval(wateringInterval);
+            if (wateringInterval.toDays() > Integer.MAX_VALUE) {
+                throw new PlantException("Watering interval is too long: " + wateringInterval.toDays() + " days");
+            }
+            Duration oldWateringInterval = getWateringInterval();
+            wateringIntervals[slot()] = (int) wateringInterval.toDays();
+            plantChanged(this, PlantProperty.WATERING_INTERVAL, oldWateringInterval);
+        }
+        @Override
+        public String getNotes() {
+            return notes[slot()];
+        }
+        @Override
+        public void setNotes(String notes) {
+            int slot = slot();
+            String oldNotes = ColumnarPlantCollection.this.notes[slot];
+            ColumnarPlantCollection.this.notes[slot] = intern(notes);
+            if (notesIndex != null) {
+                notesIndex.update(slot, oldNotes, notes);
+            }
+            release(oldNotes);
+            plantChanged(this, PlantProperty.NOTES, oldNotes);
+        }
+        @Override
+        public LocalDate getPlantedDate() {
+            return LocalDate.ofEpochDay(plantedDays[slot()]);
+        }
+        @Override
+        public void setPlantedDate(LocalDate plantedDate) throws PlantException {
+            checkPlantedDate(plantedDate, getLastWateringDate());
+            LocalDate oldPlantedDate = getPlantedDate();
+            plantedDays[slot()] = toEpochDay(plantedDate);
+            plantChanged(this, PlantProperty.PLANTED_DATE, oldPlantedDate);
+        }
+        @Override
+        public LocalDate getLastWateringDate() {
+            return LocalDate.ofEpochDay(lastWateringDays[slot()]);
+        }
+        @Override
+        public void setLastWateringDate(LocalDate lastWateringDate) {
+            LocalDate oldLastWateringDate = getLastWateringDate();
+            lastWateringDays[slot()] = toEpochDay(lastWateringDate);
+            plantChanged(this, PlantProperty.LAST_WATERING_DATE, oldLastWateringDate);
+        }
+
+        @Override
+        public LocalDate getNextWateringDate() {
+            return LocalDate.ofEpochDay(nextWateringDay(slot()));
+        }
+        @Override
+        public boolean isWateringNeeded(LocalDate today) {
+            return nextWateringDay(slot()) < today.toEpochDay();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PlantView view && view.owner() == owner()
+                    && view.slot == slot && view.generation == generation;
+        }
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner()) + 17 * slot + generation;
+        }
+    }
+}
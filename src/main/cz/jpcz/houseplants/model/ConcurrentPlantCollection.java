@@ -0,0 +1,749 @@
+package cz.jpcz.houseplants.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe collection of Plants split into lock-striped segments.
+ * <p>
+ * Each plant belongs to the segment chosen by its hash, so adding, removing and watering
+ * different plants mostly lock different segments. After every change a writer publishes an
+ * immutable snapshot of its segment. Readers take no locks, they merge the current snapshots of all
+ * segments, so they never block writers and never wait for them. Every segment is read as of one
+ * moment, but a reader running while several segments change may see some of the changes only.
+ * Lookup tables and indexes of a snapshot are built by the first reader needing them, so the first
+ * read after a change of a segment pays for indexing that segment again.
+ * Plants have to be modified through {@link #waterPlant(Plant, LocalDate)} or under the
+ * collection's control, direct setter calls on shared plants are not synchronized.
+ */
+public class ConcurrentPlantCollection extends PlantCollection {
+
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments;
+    // Number of low bits of plant id holding index of its segment
+    private final int segmentBits;
+    private final AtomicLong sequence = new AtomicLong();
+    // Collection order merged from the last snapshots read, so reading plants by index doesn't merge again
+    private volatile MergedOrder mergedOrder;
+
+    private static final class Segment {
+        // Held by writers only
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PlantCollection plants = new PlantCollection();
+        // Global insertion sequence of each plant, used to keep collection order across segments
+        private final Map<Plant, Long> sequences = new HashMap<>();
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    }
+
+    /**
+     * Immutable state of one segment, which readers query without locking. Plants are kept in
+     * segment order in arrays shared with later snapshots, which only append behind size.
+     * Lookup tables and indexes are shared with later snapshots until a change makes them stale.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new Plant[0], new long[0], new long[0], 0);
+
+        private final Plant[] plants;
+        // Id of each plant in the segment and its global sequence
+        private final long[] ids;
+        private final long[] sequences;
+        private final int size;
+        // First position of each plant and position of each id
+        private final Lazy<Map<Plant, Integer>> positions;
+        private final Lazy<LongIntMap> positionsById;
+        private final Lazy<NameIndex> nameIndex;
+        private final Lazy<NotesIndex> notesIndex;
+        private final Lazy<WateringIndex> wateringIndex;
+
+        private Snapshot(Plant[] plants, long[] ids, long[] sequences, int size) {
+            this.plants = plants;
+            this.ids = ids;
+            this.sequences = sequences;
+            this.size = size;
+            positions = new Lazy<>(this::indexPositions);
+            positionsById = new Lazy<>(this::indexIds);
+            nameIndex = new Lazy<>(this::indexNames);
+            notesIndex = new Lazy<>(this::indexNotes);
+            wateringIndex = new Lazy<>(this::indexWatering);
+        }
+
+        /**
+         * Same plants as snapshot, only indexes depending on changed property are built again
+         */
+        private Snapshot(Snapshot snapshot, PlantProperty changed) {
+            plants = snapshot.plants;
+            ids = snapshot.ids;
+            sequences = snapshot.sequences;
+            size = snapshot.size;
+            positions = snapshot.positions;
+            positionsById = snapshot.positionsById;
+            nameIndex = changed == PlantProperty.NAME ? new Lazy<>(this::indexNames) : snapshot.nameIndex;
+            notesIndex = changed == PlantProperty.NOTES ? new Lazy<>(this::indexNotes) : snapshot.notesIndex;
+            wateringIndex = changed == PlantProperty.LAST_WATERING_DATE || changed == PlantProperty.WATERING_INTERVAL
+                    ? new Lazy<>(this::indexWatering) : snapshot.wateringIndex;
+        }
+
+        Snapshot changed(PlantProperty property) {
+            return new Snapshot(this, property);
+        }
+
+        /**
+         * Writes behind size of the shared arrays, which no published snapshot reads
+         */
+        Snapshot append(Plant plant, long id, long sequence) {
+            Plant[] newPlants = plants;
+            long[] newIds = ids;
+            long[] newSequences = sequences;
+            if (size == plants.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+                newPlants = Arrays.copyOf(plants, capacity);
+                newIds = Arrays.copyOf(ids, capacity);
+                newSequences = Arrays.copyOf(sequences, capacity);
+            }
+            newPlants[size] = plant;
+            newIds[size] = id;
+            newSequences[size] = sequence;
+            return new Snapshot(newPlants, newIds, newSequences, size + 1);
+        }
+
+        Snapshot removeIf(IntPredicate removed) {
+            Plant[] newPlants = new Plant[plants.length];
+            long[] newIds = new long[plants.length];
+            long[] newSequences = new long[plants.length];
+            int newSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.test(i)) {
+                    newPlants[newSize] = plants[i];
+                    newIds[newSize] = ids[i];
+                    newSequences[newSize++] = sequences[i];
+                }
+            }
+            return new Snapshot(newPlants, newIds, newSequences, newSize);
+        }
+
+        /**
+         * Stable sort by new sequences of plants, the same order PlantCollection.sort gives the segment
+         */
+        Snapshot sort(Map<Plant, Long> newSequences) {
+            long[] unsorted = new long[size];
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                unsorted[i] = newSequences.get(plants[i]);
+                order[i] = i;
+            }
+            sortSlots(order, size, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+            Plant[] sortedPlants = new Plant[plants.length];
+            long[] sortedIds = new long[plants.length];
+            long[] sortedSequences = new long[plants.length];
+            for (int i = 0; i < size; i++) {
+                sortedPlants[i] = plants[order[i]];
+                sortedIds[i] = ids[order[i]];
+                sortedSequences[i] = unsorted[order[i]];
+            }
+            return new Snapshot(sortedPlants, sortedIds, sortedSequences, size);
+        }
+
+        boolean contains(Plant plant) {
+            return positions.get().containsKey(plant);
+        }
+        long idOf(Plant plant) {
+            Integer position = positions.get().get(plant);
+            return position == null ? NO_ID : ids[position];
+        }
+        long sequenceOf(Plant plant) {
+            return sequences[positions.get().get(plant)];
+        }
+        Plant plantById(long id) {
+            int position = positionsById.get().get(id);
+            return position == LongIntMap.MISSING ? null : plants[position];
+        }
+        List<Plant> plants() {
+            return Arrays.asList(plants).subList(0, size);
+        }
+
+        private Map<Plant, Integer> indexPositions() {
+            Map<Plant, Integer> positions = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                positions.putIfAbsent(plants[i], i);
+            }
+            return positions;
+        }
+        private LongIntMap indexIds() {
+            LongIntMap positions = new LongIntMap();
+            for (int i = 0; i < size; i++) {
+                positions.put(ids[i], i);
+            }
+            return positions;
+        }
+        /**
+         * Indexes here key first positions of plants and rank them by position, which is segment order
+         */
+        private NameIndex indexNames() {
+            NameIndex index = new NameIndex(position -> position, position -> plants[position]);
+            Map<Plant, Integer> firstPositions = positions.get();
+            for (int i = 0; i < size; i++) {
+                if (firstPositions.get(plants[i]) == i) {
+                    index.add(i, plants[i].getName());
+                }
+            }
+            return index;
+        }
+        private NotesIndex indexNotes() {
+            NotesIndex index = new NotesIndex(position -> position, position -> plants[position]);
+            Map<Plant, Integer> firstPositions = positions.get();
+            for (int i = 0; i < size; i++) {
+                if (firstPositions.get(plants[i]) == i) {
+                    index.add(i, plants[i].getNotes());
+                }
+            }
+            return index;
+        }
+        private WateringIndex indexWatering() {
+            WateringIndex index = new WateringIndex(position -> position, position -> plants[position]);
+            Map<Plant, Integer> firstPositions = positions.get();
+            for (int i = 0; i < size; i++) {
+                if (firstPositions.get(plants[i]) == i) {
+                    index.add(i);
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Positions of plants in collection order merged from snapshots. Snapshots with the same sequence
+     * array and size hold the same plants in the same order, so the positions stay valid for
+     * snapshots changed only by plant properties.
+     */
+    private static final class MergedOrder {
+        private final long[][] sequences;
+        private final int[] sizes;
+        private final long[] positions;
+
+        MergedOrder(Snapshot[] snapshots) {
+            sequences = new long[snapshots.length][];
+            sizes = new int[snapshots.length];
+            for (int i = 0; i < snapshots.length; i++) {
+                sequences[i] = snapshots[i].sequences;
+                sizes[i] = snapshots[i].size;
+            }
+            positions = orderedPositions(snapshots, Integer.MAX_VALUE);
+        }
+
+        boolean isFor(Snapshot[] snapshots) {
+            for (int i = 0; i < snapshots.length; i++) {
+                if (sequences[i] != snapshots[i].sequences || sizes[i] != snapshots[i].size) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Value computed by the first caller needing it. Callers racing for it may each compute it,
+     * then any of the results is kept, so the computation must not have side effects.
+     */
+    private static final class Lazy<T> {
+        private final Supplier<T> supplier;
+        private volatile T value;
+
+        Lazy(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        T get() {
+            T result = value;
+            if (result == null) {
+                result = supplier.get();
+                value = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param stripes Number of independently locked segments, rounded up to power of two
+     */
+    public ConcurrentPlantCollection(int stripes) {
+        super();
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be positive: " + stripes);
+        }
+        int count = Integer.highestOneBit(stripes) == stripes ? stripes : Integer.highestOneBit(stripes) << 1;
+        segments = new Segment[count];
+        segmentBits = Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            Segment segment = new Segment();
+            // Changes may come from setters called outside of the lock, so the snapshot is swapped atomically
+            segment.plants.addListener(new PlantCollectionListener() {
+                @Override
+                public void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+                    segment.snapshot.updateAndGet(snapshot -> snapshot.changed(property));
+                    firePlantChanged(plant, property, oldValue);
+                }
+            });
+            segments[i] = segment;
+        }
+    }
+    public ConcurrentPlantCollection(List<Plant> plants) {
+        this(DEFAULT_STRIPES);
+        for (Plant plant : plants) {
+            add(plant);
+        }
+    }
+    public ConcurrentPlantCollection() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Listeners are notified under the lock of the segment, so they get changes of one segment in order
+     * @return Id of the plant, made of its id in its segment and index of the segment
+     */
+    @Override
+    public long addPlant(Plant plant) {
+        Segment segment = segmentOf(plant);
+        segment.lock.lock();
+        try {
+            long id = add(plant);
+            firePlantAdded(plant, id);
+            return id;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds plant to its segment without notifying listeners, the constructor uses it instead of
+     * overridable addPlant
+     */
+    private long add(Plant plant) {
+        int index = segmentIndex(plant);
+        Segment segment = segments[index];
+        segment.lock.lock();
+        try {
+            long id = segment.plants.addPlant(plant);
+            segment.sequences.putIfAbsent(plant, sequence.getAndIncrement());
+            long plantSequence = segment.sequences.get(plant);
+            // Swapped atomically like in the change listener, which may replace the snapshot without the lock
+            segment.snapshot.updateAndGet(snapshot -> snapshot.append(plant, id, plantSequence));
+            return id << segmentBits | index;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+    @Override
+    public void removePlant(Plant plant) {
+        Segment segment = segmentOf(plant);
+        segment.lock.lock();
+        try {
+            long id = segment.plants.getPlantId(plant);
+            if (id != NO_ID) {
+                remove(segment, id);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+    @Override
+    public void removePlant(int index) {
+        withAllLocks(() -> {
+            Snapshot[] snapshots = snapshots();
+            if (index < 0 || index >= size(snapshots)) {
+                throw new IndexOutOfBoundsException("Invalid plant index: " + index);
+            }
+            MergedOrder order = mergedOrder;
+            // Without a valid merged order only the plants up to index are merged
+            long position = order != null && order.isFor(snapshots)
+                    ? order.positions[index] : orderedPositions(snapshots, index + 1)[index];
+            int s = (int) (position >>> 32);
+            remove(segments[s], snapshots[s].ids[(int) position]);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean removePlantById(long id) {
+        if (id < 0) {
+            return false;
+        }
+        Segment segment = segments[(int) (id & (segments.length - 1))];
+        segment.lock.lock();
+        try {
+            if (segment.plants.getPlantById(id >>> segmentBits) == null) {
+                return false;
+            }
+            remove(segment, id >>> segmentBits);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+    @Override
+    public Plant getPlantById(long id) {
+        if (id < 0) {
+            return null;
+        }
+        return segments[(int) (id & (segments.length - 1))].snapshot.get().plantById(id >>> segmentBits);
+    }
+    @Override
+    public long getPlantId(Plant plant) {
+        int index = segmentIndex(plant);
+        long id = segments[index].snapshot.get().idOf(plant);
+        return id == NO_ID ? NO_ID : id << segmentBits | index;
+    }
+
+    /**
+     * Removes the copy of a plant with given id in its locked segment, publishes the segment and notifies listeners
+     */
+    private void remove(Segment segment, long localId) {
+        Plant plant = segment.plants.getPlantById(localId);
+        segment.plants.removePlantById(localId);
+        if (!segment.plants.containsPlant(plant)) {
+            segment.sequences.remove(plant);
+        }
+        segment.snapshot.updateAndGet(snapshot -> snapshot.removeIf(position -> snapshot.ids[position] == localId));
+        firePlantRemoved(plant, localId << segmentBits | segmentIndex(plant));
+    }
+
+    @Override
+    public void waterPlant(Plant plant, LocalDate date) {
+        Segment segment = segmentOf(plant);
+        segment.lock.lock();
+        try {
+            plant.setLastWateringDate(date);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Groups events by segment and applies each group under one lock of its segment
+     */
+    @Override
+    public List<WateringOutcome> waterPlants(List<WateringEvent> events) {
+        WateringOutcome[] outcomes = new WateringOutcome[events.size()];
+        deferViewUpdates(events.size(), () -> waterBySegment(events, outcomes));
+        return Arrays.asList(outcomes);
+    }
+
+    private void waterBySegment(List<WateringEvent> events, WateringOutcome[] outcomes) {
+        int[] segmentOfEvent = new int[events.size()];
+        int[] counts = new int[segments.length];
+        for (int i = 0; i < segmentOfEvent.length; i++) {
+            Plant plant = events.get(i).plant();
+            if (plant == null) {
+                outcomes[i] = WateringOutcome.NOT_FOUND;
+                segmentOfEvent[i] = -1;
+            } else {
+                segmentOfEvent[i] = segmentIndex(plant);
+                counts[segmentOfEvent[i]]++;
+            }
+        }
+        int[][] positions = new int[segments.length][];
+        for (int s = 0; s < segments.length; s++) {
+            positions[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int i = 0; i < segmentOfEvent.length; i++) {
+            int s = segmentOfEvent[i];
+            if (s >= 0) {
+                positions[s][counts[s]++] = i;
+            }
+        }
+        for (int s = 0; s < segments.length; s++) {
+            if (positions[s].length == 0) {
+                continue;
+            }
+            Segment segment = segments[s];
+            segment.lock.lock();
+            try {
+                segment.plants.waterPlants(events, positions[s], outcomes);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+    @Override
+    boolean containsPlant(Plant plant) {
+        return segmentOf(plant).snapshot.get().contains(plant);
+    }
+
+    @Override
+    public Plant getPlant(int index) {
+        Snapshot[] snapshots = snapshots();
+        if (index < 0 || index >= size(snapshots)) {
+            throw new IndexOutOfBoundsException("Invalid plant index: " + index);
+        }
+        long position = orderedPositions(snapshots)[index];
+        return snapshots[(int) (position >>> 32)].plants[(int) position];
+    }
+    @Override
+    public List<Plant> getPlants() {
+        return orderedPlants(snapshots());
+    }
+    /**
+     * Streams plants of the snapshots taken when the stream is created
+     */
+    @Override
+    public Stream<Plant> stream() {
+        return getPlants().stream();
+    }
+    /**
+     * Fills the view under write locks, so no change is missed between filling and subscribing
+     */
+    @Override
+    SortedPlantView createSortedView(PlantOrder order) {
+        return withAllLocks(() -> super.createSortedView(order));
+    }
+    @Override
+    public int size() {
+        return size(snapshots());
+    }
+
+    @Override
+    public List<Plant> getPlantsByCondition(Predicate<Plant> condition) {
+        return orderedPlants(snapshots()).stream().filter(condition).toList();
+    }
+    @Override
+    public List<Plant> getPlantsByNotes(String words) {
+        return gather(snapshots(), snapshot -> snapshot.notesIndex.get().allTerms(words));
+    }
+    @Override
+    public List<Plant> getPlantsByAnyNotes(String words) {
+        return gather(snapshots(), snapshot -> snapshot.notesIndex.get().anyTerm(words));
+    }
+    @Override
+    public List<Plant> getPlantsByNotesPrefix(String prefix) {
+        return gather(snapshots(), snapshot -> snapshot.notesIndex.get().termPrefix(prefix));
+    }
+    @Override
+    public List<Plant> getPlantsByName(String name) {
+        Snapshot[] snapshots = snapshots();
+        return merge(snapshots, snapshot -> snapshot.nameIndex.get().get(name), bySequence(snapshots));
+    }
+    @Override
+    public List<String> getNamesByPrefix(String prefix, int limit) {
+        TreeSet<String> names = new TreeSet<>();
+        for (Snapshot snapshot : snapshots()) {
+            names.addAll(snapshot.nameIndex.get().namesByPrefix(prefix, limit));
+        }
+        return names.stream().limit(limit).toList();
+    }
+    @Override
+    public List<Plant> getPlantsByNamePrefix(String prefix, int limit) {
+        Snapshot[] snapshots = snapshots();
+        List<Plant> plants = merge(snapshots, snapshot -> snapshot.nameIndex.get().plantsByPrefix(prefix, limit),
+                Comparator.comparing(Plant::getName).thenComparing(bySequence(snapshots)));
+        return new ArrayList<>(plants.subList(0, Math.min(limit, plants.size())));
+    }
+    @Override
+    public int removePlantsByName(String name) {
+        return withAllLocks(() -> {
+            int removed = 0;
+            for (int s = 0; s < segments.length; s++) {
+                Segment segment = segments[s];
+                List<Plant> plants = segment.plants.getPlantsByName(name);
+                if (plants.isEmpty()) {
+                    continue;
+                }
+                for (Plant plant : plants) {
+                    segment.sequences.remove(plant);
+                }
+                removed += segment.plants.removePlantsByName(name);
+                Set<Plant> removedPlants = new HashSet<>(plants);
+                Snapshot snapshot = segment.snapshot.getAndUpdate(current ->
+                        current.removeIf(position -> removedPlants.contains(current.plants[position])));
+                // Once per removed copy, so listeners counting copies see every removal
+                for (int i = 0; i < snapshot.size; i++) {
+                    if (removedPlants.contains(snapshot.plants[i])) {
+                        firePlantRemoved(snapshot.plants[i], snapshot.ids[i] << segmentBits | s);
+                    }
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public List<Plant> getPlantsToWater(LocalDate date) {
+        Snapshot[] snapshots = snapshots();
+        return merge(snapshots, snapshot -> snapshot.wateringIndex.get().dueBefore(date.toEpochDay()),
+                byNextWateringDay(snapshots));
+    }
+    @Override
+    public List<Plant> getPlantsDueWithin(LocalDate from, int days) {
+        Snapshot[] snapshots = snapshots();
+        return merge(snapshots, snapshot -> snapshot.wateringIndex.get()
+                .dueBetween(from.toEpochDay(), from.toEpochDay() + days), byNextWateringDay(snapshots));
+    }
+
+    @Override
+    public void sortPlantsByLastWateringDate() {
+        reorder(Comparator.comparing(Plant::getLastWateringDate), PlantProperty.LAST_WATERING_DATE);
+    }
+    @Override
+    public void sortPlantsByName() {
+        reorder(Comparator.naturalOrder(), PlantProperty.NAME);
+    }
+
+    /**
+     * Gives plants new sequence numbers following the comparator, so they are returned in that order
+     */
+    private void reorder(Comparator<Plant> comparator, PlantProperty property) {
+        withAllLocks(() -> {
+            List<Plant> plants = orderedPlants(snapshots());
+            plants.sort(comparator);
+            for (Plant plant : plants) {
+                segmentOf(plant).sequences.put(plant, sequence.getAndIncrement());
+            }
+            for (Segment segment : segments) {
+                segment.plants.sort(Comparator.comparingLong(segment.sequences::get));
+                segment.snapshot.updateAndGet(snapshot -> snapshot.sort(segment.sequences));
+            }
+            firePlantsSorted(property);
+            return null;
+        });
+    }
+
+    private Snapshot[] snapshots() {
+        Snapshot[] snapshots = new Snapshot[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            snapshots[i] = segments[i].snapshot.get();
+        }
+        return snapshots;
+    }
+
+    private static int size(Snapshot[] snapshots) {
+        int size = 0;
+        for (Snapshot snapshot : snapshots) {
+            size += snapshot.size;
+        }
+        return size;
+    }
+
+    /**
+     * K-way merge of snapshots by sequence
+     * @param limit Maximum number of returned positions
+     * @return Positions of plants in collection order, each is index of segment in high 32 bits
+     *         and position in its snapshot in low 32 bits
+     */
+    private static long[] orderedPositions(Snapshot[] snapshots, int limit) {
+        long[] ordered = new long[Math.min(size(snapshots), limit)];
+        int[] cursors = new int[snapshots.length];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(
+                Comparator.comparingLong(s -> snapshots[s].sequences[cursors[s]]));
+        for (int s = 0; s < snapshots.length; s++) {
+            if (snapshots[s].size > 0) {
+                heads.add(s);
+            }
+        }
+        for (int i = 0; i < ordered.length; i++) {
+            int s = heads.poll();
+            ordered[i] = (long) s << 32 | cursors[s];
+            if (++cursors[s] < snapshots[s].size) {
+                heads.add(s);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * @return Positions of all plants in collection order, merged again only if a snapshot changed its plants
+     */
+    private long[] orderedPositions(Snapshot[] snapshots) {
+        MergedOrder order = mergedOrder;
+        if (order == null || !order.isFor(snapshots)) {
+            order = new MergedOrder(snapshots);
+            mergedOrder = order;
+        }
+        return order.positions;
+    }
+
+    private List<Plant> orderedPlants(Snapshot[] snapshots) {
+        long[] positions = orderedPositions(snapshots);
+        List<Plant> plants = new ArrayList<>(positions.length);
+        for (long position : positions) {
+            plants.add(snapshots[(int) (position >>> 32)].plants[(int) position]);
+        }
+        return plants;
+    }
+
+    private Comparator<Plant> bySequence(Snapshot[] snapshots) {
+        return Comparator.comparingLong(plant -> snapshots[segmentIndex(plant)].sequenceOf(plant));
+    }
+
+    private Comparator<Plant> byNextWateringDay(Snapshot[] snapshots) {
+        return Comparator.comparingLong(WateringIndex::nextWateringDay).thenComparing(bySequence(snapshots));
+    }
+
+    /**
+     * K-way merge of per-segment results, each of them already ordered by comparator
+     */
+    private static List<Plant> merge(Snapshot[] snapshots, Function<Snapshot, List<Plant>> query,
+                                     Comparator<Plant> comparator) {
+        List<List<Plant>> results = new ArrayList<>(snapshots.length);
+        for (Snapshot snapshot : snapshots) {
+            results.add(query.apply(snapshot));
+        }
+        return PlantMerge.mergeSorted(results, comparator);
+    }
+
+    /**
+     * Concatenates unordered per-segment results and puts them in collection order
+     */
+    private List<Plant> gather(Snapshot[] snapshots, Function<Snapshot, List<Plant>> query) {
+        List<Plant> plants = new ArrayList<>();
+        for (Snapshot snapshot : snapshots) {
+            plants.addAll(query.apply(snapshot));
+        }
+        plants.sort(bySequence(snapshots));
+        return plants;
+    }
+
+    private Segment segmentOf(Plant plant) {
+        return segments[segmentIndex(plant)];
+    }
+
+    private int segmentIndex(Plant plant) {
+        int hash = plant.hashCode();
+        return (hash ^ (hash >>> 16)) & (segments.length - 1);
+    }
+
+    /**
+     * Runs action while holding locks of all segments, always locked in the same order
+     */
+    private <T> T withAllLocks(Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (; locked < segments.length; locked++) {
+                segments[locked].lock.lock();
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                segments[i].lock.unlock();
+            }
+        }
+    }
+}
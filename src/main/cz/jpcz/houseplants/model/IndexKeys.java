@@ -0,0 +1,83 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Keys indexed under one entry of an index, e.g. slots of plants with one name. Keys are kept
+ * in an int array sorted by their rank, which the index gives and which must not change while
+ * the key is indexed, so an entry holds no object per key. Keys are usually added in order of
+ * their rank and then only appended.
+ */
+final class IndexKeys {
+
+    private int[] keys = new int[1];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return false if key was already there
+     */
+    boolean add(int key, IntToLongFunction rank) {
+        long keyRank = rank.applyAsLong(key);
+        int position = size;
+        if (size > 0 && rank.applyAsLong(keys[size - 1]) >= keyRank) {
+            position = find(keyRank, rank);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        keys[position] = key;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return false if key was not there
+     */
+    boolean remove(int key, IntToLongFunction rank) {
+        int position = find(rank.applyAsLong(key), rank);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    boolean contains(int key, IntToLongFunction rank) {
+        return find(rank.applyAsLong(key), rank) >= 0;
+    }
+
+    /**
+     * @return Position of key with given rank, -(insertion point) - 1 if there is none
+     */
+    private int find(long keyRank, IntToLongFunction rank) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleRank = rank.applyAsLong(keys[middle]);
+            if (middleRank < keyRank) {
+                low = middle + 1;
+            } else if (middleRank > keyRank) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
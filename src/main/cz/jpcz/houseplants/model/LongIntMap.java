@@ -0,0 +1,119 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Hash map from positive long keys to int values stored in primitive arrays, so neither keys
+ * nor values are boxed. Uses open addressing with linear probing, removed entries are not left
+ * as tombstones but later entries of their probe sequence are shifted back.
+ */
+class LongIntMap {
+
+    static final int MISSING = -1;
+
+    // Key 0 marks empty entry
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    LongIntMap() {
+        keys = new long[16];
+        values = new int[16];
+        mask = keys.length - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Value of key or MISSING, always MISSING for keys which are not positive
+     */
+    int get(long key) {
+        if (key <= 0) {
+            return MISSING;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @param key Positive key
+     */
+    void put(long key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        int i = index(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @return Removed value or MISSING, always MISSING for keys which are not positive
+     */
+    int remove(long key) {
+        if (key <= 0) {
+            return MISSING;
+        }
+        int i = index(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+        size--;
+        // Shift back entries which would not be found with a gap in their probe sequence
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = 0;
+        return value;
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = index(oldKeys[i]);
+                while (keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Index of plants by name: hash index for exact lookup and sorted set of names for prefix lookup.
+ * Plants are indexed by int keys given by the collection, e.g. their slots, and turned into
+ * plants only when a lookup returns them.
+ */
+class NameIndex {
+
+    private final Map<String, IndexKeys> keysByName = new HashMap<>();
+    private final NavigableSet<String> sortedNames = new TreeSet<>();
+    private final IntToLongFunction rank;
+    private final IntFunction<Plant> plant;
+
+    /**
+     * @param rank Order of keys with the same name, unique for each key
+     * @param plant Plant of a key
+     */
+    NameIndex(IntToLongFunction rank, IntFunction<Plant> plant) {
+        this.rank = rank;
+        this.plant = plant;
+    }
+
+    void add(int key, String name) {
+        IndexKeys keys = keysByName.computeIfAbsent(name, n -> new IndexKeys());
+        if (keys.add(key, rank) && keys.size() == 1 && name != null) {
+            sortedNames.add(name);
+        }
+    }
+
+    /**
+     * @return true if key was indexed under given name
+     */
+    boolean remove(int key, String name) {
+        IndexKeys keys = keysByName.get(name);
+        if (keys == null || !keys.remove(key, rank)) {
+            return false;
+        }
+        if (keys.size() == 0) {
+            keysByName.remove(name);
+            if (name != null) {
+                sortedNames.remove(name);
+            }
+        }
+        return true;
+    }
+
+    void rename(int key, String oldName, String newName) {
+        if (remove(key, oldName)) {
+            add(key, newName);
+        }
+    }
+
+    /**
+     * @return Plants with given name ordered by rank
+     */
+    List<Plant> get(String name) {
+        List<Plant> plants = new ArrayList<>();
+        IndexKeys keys = keysByName.get(name);
+        if (keys != null) {
+            addPlants(keys, keys.size(), plants);
+        }
+        return plants;
+    }
+
+    /**
+     * @return At most limit distinct names starting with prefix in alphabetical order
+     */
+    List<String> namesByPrefix(String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        for (String name : prefixRange(prefix)) {
+            if (names.size() >= limit) break;
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * @return At most limit plants whose name starts with prefix, ordered by name and then by rank
+     */
+    List<Plant> plantsByPrefix(String prefix, int limit) {
+        List<Plant> plants = new ArrayList<>();
+        for (String name : prefixRange(prefix)) {
+            if (plants.size() >= limit) break;
+            IndexKeys keys = keysByName.get(name);
+            addPlants(keys, Math.min(keys.size(), limit - plants.size()), plants);
+        }
+        return plants;
+    }
+
+    private void addPlants(IndexKeys keys, int count, List<Plant> plants) {
+        for (int i = 0; i < count; i++) {
+            plants.add(plant.apply(keys.get(i)));
+        }
+    }
+
+    private NavigableSet<String> prefixRange(String prefix) {
+        return sortedNames.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+}
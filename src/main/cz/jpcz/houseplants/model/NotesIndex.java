@@ -0,0 +1,181 @@
+package cz.jpcz.houseplants.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Inverted index of words in plant notes.
+ * <p>
+ * Notes are split into terms at every character which is not a letter or digit. Terms are
+ * lower-cased and stripped of diacritics, so "Nezalévá" and "nezaleva" are the same term.
+ * Each term has a posting list of plants whose notes contain it, queries look up posting lists
+ * of their terms and intersect or unite them, so they never look at plants without the terms.
+ * Posting lists hold int keys given by the collection, e.g. slots of plants, sorted by their rank,
+ * and keys are turned into plants only when a query returns them.
+ */
+class NotesIndex {
+
+    private final Map<String, IndexKeys> keysByTerm = new HashMap<>();
+    private final NavigableSet<String> sortedTerms = new TreeSet<>();
+    private final IntToLongFunction rank;
+    private final IntFunction<Plant> plant;
+
+    /**
+     * @param rank Order of returned plants, unique for each key
+     * @param plant Plant of a key
+     */
+    NotesIndex(IntToLongFunction rank, IntFunction<Plant> plant) {
+        this.rank = rank;
+        this.plant = plant;
+    }
+
+    /**
+     * @return Distinct terms of text in order of their first occurrence
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (!term.isEmpty()) {
+                terms.add(term.toString().toLowerCase(Locale.ROOT));
+                term.setLength(0);
+            }
+        }
+        if (!term.isEmpty()) {
+            terms.add(term.toString().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    void add(int key, String notes) {
+        for (String term : terms(notes)) {
+            IndexKeys keys = keysByTerm.computeIfAbsent(term, t -> new IndexKeys());
+            if (keys.add(key, rank) && keys.size() == 1) {
+                sortedTerms.add(term);
+            }
+        }
+    }
+
+    void remove(int key, String notes) {
+        for (String term : terms(notes)) {
+            IndexKeys keys = keysByTerm.get(term);
+            if (keys != null && keys.remove(key, rank) && keys.size() == 0) {
+                keysByTerm.remove(term);
+                sortedTerms.remove(term);
+            }
+        }
+    }
+
+    void update(int key, String oldNotes, String newNotes) {
+        remove(key, oldNotes);
+        add(key, newNotes);
+    }
+
+    /**
+     * @return Plants whose notes contain all terms of text ordered by rank, none if text has no terms
+     */
+    List<Plant> allTerms(String text) {
+        List<IndexKeys> postings = new ArrayList<>();
+        for (String term : terms(text)) {
+            IndexKeys posting = keysByTerm.get(term);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            postings.add(posting);
+        }
+        if (postings.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Candidates come from the shortest posting list, the others are only probed
+        postings.sort(Comparator.comparingInt(IndexKeys::size));
+        IndexKeys candidates = postings.get(0);
+        List<Plant> plants = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            int key = candidates.get(i);
+            boolean inAll = true;
+            for (int j = 1; j < postings.size() && inAll; j++) {
+                inAll = postings.get(j).contains(key, rank);
+            }
+            if (inAll) {
+                plants.add(plant.apply(key));
+            }
+        }
+        return plants;
+    }
+
+    /**
+     * @return Plants whose notes contain at least one term of text ordered by rank
+     */
+    List<Plant> anyTerm(String text) {
+        List<IndexKeys> postings = new ArrayList<>();
+        for (String term : terms(text)) {
+            IndexKeys posting = keysByTerm.get(term);
+            if (posting != null) {
+                postings.add(posting);
+            }
+        }
+        return union(postings);
+    }
+
+    /**
+     * @return Plants whose notes contain a term starting with prefix ordered by rank,
+     * prefix is normalized as a term
+     */
+    List<Plant> termPrefix(String prefix) {
+        Set<String> prefixTerms = terms(prefix);
+        if (prefixTerms.size() != 1) {
+            return new ArrayList<>();
+        }
+        String term = prefixTerms.iterator().next();
+        List<IndexKeys> postings = new ArrayList<>();
+        for (String matching : sortedTerms.subSet(term, true, term + Character.MAX_VALUE, false)) {
+            postings.add(keysByTerm.get(matching));
+        }
+        return union(postings);
+    }
+
+    private List<Plant> union(List<IndexKeys> postings) {
+        int count = 0;
+        for (IndexKeys posting : postings) {
+            count += posting.size();
+        }
+        int[] keys = new int[count];
+        count = 0;
+        for (IndexKeys posting : postings) {
+            for (int i = 0; i < posting.size(); i++) {
+                keys[count++] = posting.get(i);
+            }
+        }
+        if (postings.size() > 1) {
+            PlantCollection.sortSlots(keys, count, (a, b) -> Long.compare(rank.applyAsLong(a), rank.applyAsLong(b)));
+        }
+        List<Plant> plants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                plants.add(plant.apply(keys[i]));
+            }
+        }
+        return plants;
+    }
+}
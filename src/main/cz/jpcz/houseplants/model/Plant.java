@@ -7,6 +7,8 @@ import cz.jpcz.houseplants.util.DebugManager;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Plant implements Comparable<Plant> {
     private String name;
@@ -14,6 +16,9 @@ public class Plant implements Comparable<Plant> {
     private String notes;
     private LocalDate plantedDate;
     private LocalDate lastWateringDate;
+    // Created for the first observer. Collections on different threads add, remove and notify observers,
+    // so the list is copied on write and never changes under a notification.
+    private volatile List<PlantObserver> observers;
 
     /**
      * Main constructor for creating new plant
@@ -29,86 +34,159 @@ public class Plant implements Comparable<Plant> {
         this.lastWateringDate = lastWateringDate;
         setWateringInterval(wateringInterval);
         setPlantedDate(plantedDate);
-        DebugManager.print(ConsoleColor.BLUE + "Creating plant with parameters: " + name + ", " +
-                wateringInterval.toDays() + ", " + notes + ", " + plantedDate + ", " + lastWateringDate);
+        // Checked here, so plants created with debug off don't pay for building the message
+        if (DebugManager.isDebug()) {
+            DebugManager.print(ConsoleColor.BLUE + "Creating plant with parameters: " + name + ", " +
+                    wateringInterval.toDays() + ", " + notes + ", " + plantedDate + ", " + lastWateringDate);
+        }
+    }
+    /**
+     * Creates plant planted and watered on given date
+     */
+    public Plant(String name, Duration wateringInterval, LocalDate date) throws PlantException {
+        this(name, wateringInterval, "", date, date);
     }
     public Plant(String name, Duration wateringInterval) throws PlantException {
-        this(name, wateringInterval, "", LocalDate.now(), LocalDate.now());
+        this(name, wateringInterval, LocalDate.now());
     }
     public Plant(String name) throws PlantException {
         this(name, Duration.ofDays(7));
     }
+    /**
+     * Constructor for views whose state is stored outside of this object
+     */
+    Plant() {}
 
     public void doWateringNow() {
-        this.lastWateringDate = LocalDate.now();
+        setLastWateringDate(LocalDate.now());
     }
     public LocalDate getNextWateringDate() {
-        return lastWateringDate.plusDays(wateringInterval.toDays());
+        return getLastWateringDate().plusDays(getWateringInterval().toDays());
     }
     public String getWateringInfo() {
-        long daysSinceLastWatering = LocalDate.now().toEpochDay() - lastWateringDate.toEpochDay();
+        return getWateringInfo(LocalDate.now());
+    }
+    /**
+     * @param today Date the information is evaluated for
+     * @return Information about last watering and whether the plant should be watered
+     */
+    public String getWateringInfo(LocalDate today) {
+        LocalDate lastWateringDate = getLastWateringDate();
+        long wateringIntervalDays = getWateringInterval().toDays();
+        long daysSinceLastWatering = today.toEpochDay() - lastWateringDate.toEpochDay();
         String message = "The plant was last watered on " + lastWateringDate + "(" + daysSinceLastWatering + " days ago)"
-                + ". Watering interval is " + wateringInterval.toDays() + " days.";
-        if (daysSinceLastWatering >= wateringInterval.toDays()) {
+                + ". Watering interval is " + wateringIntervalDays + " days.";
+        if (daysSinceLastWatering >= wateringIntervalDays) {
             message += " Consider watering now!";
         }
         return message;
     }
     public boolean isWateringNeeded() {
-        return getNextWateringDate().isBefore(LocalDate.now());
+        return isWateringNeeded(LocalDate.now());
+    }
+    /**
+     * @param today Date the watering need is evaluated for
+     * @return true if next watering date is before given date
+     */
+    public boolean isWateringNeeded(LocalDate today) {
+        return getNextWateringDate().isBefore(today);
     }
 
     public String getName() {
         return name;
     }
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        notifyObservers(PlantProperty.NAME, oldName);
     }
     public Duration getWateringInterval() {
         return wateringInterval;
     }
     public void setWateringInterval(Duration wateringInterval) throws PlantException {
-        if (wateringInterval.isNegative() || wateringInterval.isZero()) {
-            throw new PlantException("Watering interval cannot be negative or zero.");
-        }
+        checkWateringInterval(wateringInterval);
+        Duration oldWateringInterval = this.wateringInterval;
         this.wateringInterval = wateringInterval;
+        notifyObservers(PlantProperty.WATERING_INTERVAL, oldWateringInterval);
     }
     public String getNotes() {
         return notes;
     }
     public void setNotes(String notes) {
+        String oldNotes = this.notes;
         this.notes = notes;
+        notifyObservers(PlantProperty.NOTES, oldNotes);
     }
     public LocalDate getPlantedDate() {
         return plantedDate;
     }
     public void setPlantedDate(LocalDate plantedDate) throws PlantException {
-        if (plantedDate.isAfter(lastWateringDate)) {
-            throw new PlantException("Planted date cannot be after last watering date.");
-        }
+        checkPlantedDate(plantedDate, lastWateringDate);
+        LocalDate oldPlantedDate = this.plantedDate;
         this.plantedDate = plantedDate;
+        notifyObservers(PlantProperty.PLANTED_DATE, oldPlantedDate);
     }
     public LocalDate getLastWateringDate() {
         return lastWateringDate;
     }
     public void setLastWateringDate(LocalDate lastWateringDate) {
+        LocalDate oldLastWateringDate = this.lastWateringDate;
         this.lastWateringDate = lastWateringDate;
+        notifyObservers(PlantProperty.LAST_WATERING_DATE, oldLastWateringDate);
+    }
+
+    static void checkWateringInterval(Duration wateringInterval) throws PlantException {
+        if (wateringInterval.isNegative() || wateringInterval.isZero()) {
+            throw new PlantException("Watering interval cannot be negative or zero.");
+        }
+    }
+    static void checkPlantedDate(LocalDate plantedDate, LocalDate lastWateringDate) throws PlantException {
+        if (plantedDate.isAfter(lastWateringDate)) {
+            throw new PlantException("Planted date cannot be after last watering date.");
+        }
+    }
+
+    void addObserver(PlantObserver observer) {
+        List<PlantObserver> current = observers;
+        if (current == null) {
+            synchronized (this) {
+                if (observers == null) {
+                    observers = new CopyOnWriteArrayList<>();
+                }
+                current = observers;
+            }
+        }
+        current.add(observer);
+    }
+    void removeObserver(PlantObserver observer) {
+        List<PlantObserver> current = observers;
+        if (current != null) {
+            current.remove(observer);
+        }
+    }
+    private void notifyObservers(PlantProperty property, Object oldValue) {
+        List<PlantObserver> current = observers;
+        if (current != null) {
+            for (PlantObserver observer : current) {
+                observer.plantChanged(this, property, oldValue);
+            }
+        }
     }
 
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
         return "Plant{" +
-                "name='" + name + '\'' +
-                ", wateringInterval=" + wateringInterval.toDays() +
-                ", notes='" + notes + '\'' +
-                ", plantedDate=" + plantedDate.format(formatter) +
-                ", lastWateringDate=" + lastWateringDate.format(formatter) +
+                "name='" + getName() + '\'' +
+                ", wateringInterval=" + getWateringInterval().toDays() +
+                ", notes='" + getNotes() + '\'' +
+                ", plantedDate=" + getPlantedDate().format(formatter) +
+                ", lastWateringDate=" + getLastWateringDate().format(formatter) +
                 '}';
     }
 
     @Override
     public int compareTo(Plant plant) {
-        return name.compareTo(plant.getName());
+        return getName().compareTo(plant.getName());
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Change of a PlantCollection published by its {@link PlantChangeFeed}
+ * @param sequence Number of the change, changes of one feed are numbered 1, 2, 3... in order they happened
+ * @param type Kind of change
+ * @param plant Added, removed or changed plant, it may have changed again since
+ * @param property Changed property, null for ADDED and REMOVED
+ * @param oldValue Value of property before the change, null for ADDED and REMOVED
+ * @param newValue Value of property after the change, null for ADDED and REMOVED
+ */
+public record PlantChange(long sequence, Type type, Plant plant, PlantProperty property, Object oldValue,
+                          Object newValue) {
+
+    public enum Type {
+        ADDED,
+        REMOVED,
+        /**
+         * Last watering date changed
+         */
+        WATERED,
+        /**
+         * Any other property changed
+         */
+        EDITED
+    }
+
+    static Object valueOf(Plant plant, PlantProperty property) {
+        return switch (property) {
+            case NAME -> plant.getName();
+            case NOTES -> plant.getNotes();
+            case WATERING_INTERVAL -> plant.getWateringInterval();
+            case PLANTED_DATE -> plant.getPlantedDate();
+            case LAST_WATERING_DATE -> plant.getLastWateringDate();
+        };
+    }
+}
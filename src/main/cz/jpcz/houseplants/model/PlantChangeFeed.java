@@ -0,0 +1,252 @@
+package cz.jpcz.houseplants.model;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.util.DebugManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbered feed of changes of a PlantCollection, so consumers get only what changed instead of
+ * comparing copies of all plants.
+ * <p>
+ * The last {@code capacity} changes are kept in a ring buffer. Subscribers start after any retained
+ * sequence number, e.g. the last one they processed before a restart, and get changes only as they
+ * request them. Changes are delivered on the executor, publishing a change never waits for a
+ * subscriber. A subscriber falling more than {@code capacity} changes behind, or resuming after a
+ * change which is no longer retained, gets onError with PlantException and has to reload all plants.
+ * Removed plants stay reachable from the buffer until their change is overwritten.
+ */
+public class PlantChangeFeed implements Flow.Publisher<PlantChange> {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Executor executor;
+    // Guarded by lock
+    private final Object lock = new Object();
+    private final PlantChange[] changes;
+    private long lastSequence;
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    final PlantCollectionListener listener = new PlantCollectionListener() {
+        @Override
+        public void plantAdded(Plant plant) {
+            publish(PlantChange.Type.ADDED, plant, null, null);
+        }
+        @Override
+        public void plantRemoved(Plant plant) {
+            publish(PlantChange.Type.REMOVED, plant, null, null);
+        }
+        @Override
+        public void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+            publish(property == PlantProperty.LAST_WATERING_DATE ? PlantChange.Type.WATERED : PlantChange.Type.EDITED,
+                    plant, property, oldValue);
+        }
+    };
+
+    /**
+     * @param capacity Number of retained changes
+     * @param executor Executor changes are delivered on
+     */
+    public PlantChangeFeed(int capacity, Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.changes = new PlantChange[capacity];
+        this.executor = executor;
+    }
+    public PlantChangeFeed() {
+        this(DEFAULT_CAPACITY, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return Sequence number of the last change, 0 if nothing changed yet
+     */
+    public long getLastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Subscribes to changes made from now on
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PlantChange> subscriber) {
+        subscribe(subscriber, getLastSequence());
+    }
+
+    /**
+     * Subscribes to changes following given sequence number
+     * @param afterSequence Sequence number of the last change the subscriber already processed, 0 for all
+     *                      changes since the feed was created
+     */
+    public void subscribe(Flow.Subscriber<? super PlantChange> subscriber, long afterSequence) {
+        ChangeSubscription subscription = new ChangeSubscription(subscriber, afterSequence + 1);
+        PlantException lost = checkRetained(afterSequence);
+        if (lost != null) {
+            // Failed before onSubscribe, so requests made in onSubscribe can't deliver anything first
+            subscription.failure = lost;
+        }
+        subscriber.onSubscribe(subscription);
+        if (lost != null) {
+            subscription.signal();
+            return;
+        }
+        subscriptions.add(subscription);
+        // Changes published between the check and adding the subscription are picked up here
+        subscription.signal();
+    }
+
+    /**
+     * Returns changes following given sequence number without subscribing, for consumers polling the feed
+     * @param afterSequence Sequence number of the last change the caller already processed
+     * @param limit Maximum number of returned changes
+     * @return Changes in order of their sequence numbers
+     * @throws PlantException if some of the requested changes are no longer retained
+     */
+    public List<PlantChange> getChangesAfter(long afterSequence, int limit) throws PlantException {
+        synchronized (lock) {
+            PlantException lost = checkRetained(afterSequence);
+            if (lost != null) {
+                throw lost;
+            }
+            List<PlantChange> result = new ArrayList<>((int) Math.min(limit, lastSequence - afterSequence));
+            for (long sequence = afterSequence + 1; sequence <= lastSequence && result.size() < limit; sequence++) {
+                result.add(changes[index(sequence)]);
+            }
+            return result;
+        }
+    }
+
+    private void publish(PlantChange.Type type, Plant plant, PlantProperty property, Object oldValue) {
+        Object newValue = property == null ? null : PlantChange.valueOf(plant, property);
+        synchronized (lock) {
+            long sequence = ++lastSequence;
+            changes[index(sequence)] = new PlantChange(sequence, type, plant, property, oldValue, newValue);
+        }
+        for (ChangeSubscription subscription : subscriptions) {
+            // Subscribers without demand are signalled by their next request
+            if (subscription.demand.get() > 0) {
+                subscription.signal();
+            }
+        }
+    }
+
+    /**
+     * @return Exception for the subscriber if changes after given sequence are not retained, otherwise null
+     */
+    private PlantException checkRetained(long afterSequence) {
+        synchronized (lock) {
+            if (afterSequence < 0 || afterSequence > lastSequence) {
+                return new PlantException("Sequence " + afterSequence + " is out of range [0, " + lastSequence + "]");
+            }
+            if (afterSequence < lastSequence - changes.length) {
+                return new PlantException("Changes after sequence " + afterSequence + " are no longer retained, "
+                        + "oldest retained change is " + (lastSequence - changes.length + 1));
+            }
+            return null;
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % changes.length);
+    }
+
+    /**
+     * Delivers changes to one subscriber. Deliveries are serialized by the work counter, only one
+     * drain runs at a time and every signal during a drain makes it run once more.
+     */
+    private final class ChangeSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super PlantChange> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+        // Accessed only by the running drain
+        private long nextSequence;
+
+        ChangeSubscription(Flow.Subscriber<? super PlantChange> subscriber, long nextSequence) {
+            this.subscriber = subscriber;
+            this.nextSequence = nextSequence;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested number of changes must be positive: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void fail(Throwable throwable) {
+            failure = throwable;
+            subscriptions.remove(this);
+            signal();
+        }
+
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (!cancelled) {
+                if (failure != null) {
+                    cancelled = true;
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                PlantChange change;
+                synchronized (lock) {
+                    if (nextSequence > lastSequence) {
+                        return;
+                    }
+                    if (nextSequence <= lastSequence - changes.length) {
+                        failure = new PlantException("Subscriber fell behind, change " + nextSequence
+                                + " is no longer retained");
+                        subscriptions.remove(this);
+                        continue;
+                    }
+                    change = changes[index(nextSequence)];
+                }
+                nextSequence++;
+                demand.decrementAndGet();
+                try {
+                    subscriber.onNext(change);
+                } catch (RuntimeException e) {
+                    DebugManager.printError("Subscriber of plant changes failed, cancelling it: " + e);
+                    cancel();
+                }
+            }
+        }
+    }
+}
@@ -1,49 +1,820 @@
 package cz.jpcz.houseplants.model;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntBinaryOperator;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Class representing collection of Plants
+ * <p>
+ * Every added plant gets a stable id, which stays valid until the plant is removed, no matter how
+ * the collection is sorted or what else is removed. Plants are kept in slots linked in collection
+ * order, so plants are looked up and removed by id without searching or shifting other plants,
+ * and slots of removed plants are reused. Indexes of plants are a view of the collection order,
+ * they change with every removal and sorting. Indexes by next watering date, name and notes are
+ * built by their first query and kept up to date from then on.
  */
 public class PlantCollection {
 
-    List<Plant> plants = new ArrayList<>();
+    static final long NO_ID = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NONE = -1;
+    // Smaller batches of waterings are applied event by event, deferring updates would cost more than it saves
+    private static final int MIN_DEFERRED_BATCH = 64;
+
+    // Plant and id of each slot, slots are linked in collection order, free slots are linked by next
+    private Plant[] slotPlants = new Plant[INITIAL_CAPACITY];
+    private long[] slotIds = new long[INITIAL_CAPACITY];
+    private int[] previous = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    // Next slot holding the same plant, when one plant is added more than once
+    private int[] nextCopy = new int[INITIAL_CAPACITY];
+    private int usedSlots;
+    private int first = NONE;
+    private int last = NONE;
+    private int freeSlot = NONE;
+    private int size;
+    private long nextId = 1;
+
+    private final LongIntMap slotById = new LongIntMap();
+    // Open addressing table of the first slot of each plant, hashed by the plant in the slot. Plants are
+    // compared through their slots, so the table holds no boxed keys or values. NONE marks empty entry.
+    private int[] firstSlots = newTable(INITIAL_CAPACITY * 2);
+    private int plantCount;
+    // Slots in collection order, rebuilt for index access after the order changed
+    private int[] orderedSlots = new int[0];
+    private boolean orderedSlotsValid = true;
+
+    // Indexes are built by their first query, a collection which is only loaded and saved doesn't pay for them
+    private WateringIndex wateringIndex;
+    private NameIndex nameIndex;
+    private NotesIndex notesIndex;
+    private final PlantObserver observer = this::plantChanged;
+    private final List<PlantCollectionListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<PlantOrder, SortedPlantView> sortedViews = new EnumMap<>(PlantOrder.class);
+    // Guarded by listeners
+    private PlantChangeFeed changeFeed;
+    // Set while a batch of waterings is applied, the watering index is then updated once for the batch
+    private boolean batchWatering;
 
     public PlantCollection(List<Plant> plants) {
-        this.plants.addAll(plants);
+        for (Plant plant : plants) {
+            add(plant);
+        }
     }
     public PlantCollection() {};
 
-    public void addPlant(Plant plant) {
-        this.plants.add(plant);
+    /**
+     * Adds plant to the end of the collection
+     * @return Id of the plant in this collection
+     */
+    public long addPlant(Plant plant) {
+        long id = add(plant);
+        firePlantAdded(plant, id);
+        return id;
     }
+
+    /**
+     * Adds plant without notifying listeners. The constructor adds plants by this method instead of
+     * addPlant, which subclasses override, and has no listeners to notify yet.
+     */
+    private long add(Plant plant) {
+        int slot = allocateSlot();
+        long id = nextId++;
+        slotPlants[slot] = plant;
+        slotIds[slot] = id;
+        slotById.put(id, slot);
+        link(slot);
+
+        int firstCopy = firstSlot(plant);
+        if (firstCopy == NONE) {
+            addFirstSlot(slot);
+            plant.addObserver(observer);
+            if (wateringIndex != null) {
+                wateringIndex.add(slot);
+            }
+            if (nameIndex != null) {
+                nameIndex.add(slot, plant.getName());
+            }
+            if (notesIndex != null) {
+                notesIndex.add(slot, plant.getNotes());
+            }
+        } else {
+            int copy = firstCopy;
+            while (nextCopy[copy] != NONE) {
+                copy = nextCopy[copy];
+            }
+            nextCopy[copy] = slot;
+        }
+        return id;
+    }
+    /**
+     * Removes plant, if it was added more than once, its earliest added copy is removed
+     */
     public void removePlant(Plant plant) {
-        plants.remove(plant);
+        int slot = firstSlot(plant);
+        if (slot != NONE) {
+            removeSlot(slot);
+            firePlantRemoved(plant, slotIds[slot]);
+        }
     }
     public void removePlant(int index) {
-        plants.remove(index);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int slot = orderedSlots()[index];
+        Plant plant = slotPlants[slot];
+        removeSlot(slot);
+        firePlantRemoved(plant, slotIds[slot]);
+    }
+    /**
+     * @param id Id returned when the plant was added
+     * @return Whether plant with given id was in the collection
+     */
+    public boolean removePlantById(long id) {
+        int slot = slotById.get(id);
+        if (slot == LongIntMap.MISSING) {
+            return false;
+        }
+        Plant plant = slotPlants[slot];
+        removeSlot(slot);
+        firePlantRemoved(plant, id);
+        return true;
+    }
+
+    /**
+     * Removes all plants with given name
+     * @param name Name of plants to remove
+     * @return Number of removed plants
+     */
+    public int removePlantsByName(String name) {
+        List<Plant> removed = nameIndex().get(name);
+        int count = 0;
+        for (Plant plant : removed) {
+            int slot;
+            while ((slot = firstSlot(plant)) != NONE) {
+                removeSlot(slot);
+                count++;
+                // Once per removed copy, so listeners counting copies see every removal
+                firePlantRemoved(plant, slotIds[slot]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param id Id returned when the plant was added
+     * @return Plant with given id, null if there is no such plant in the collection
+     */
+    public Plant getPlantById(long id) {
+        int slot = slotById.get(id);
+        return slot == LongIntMap.MISSING ? null : slotPlants[slot];
+    }
+
+    /**
+     * @return Id of plant, of its earliest added copy if it was added more than once,
+     *         or -1 if the plant is not in the collection
+     */
+    public long getPlantId(Plant plant) {
+        int slot = firstSlot(plant);
+        return slot == NONE ? NO_ID : slotIds[slot];
+    }
+
+    private int allocateSlot() {
+        if (freeSlot != NONE) {
+            int slot = freeSlot;
+            freeSlot = next[slot];
+            return slot;
+        }
+        if (usedSlots == slotPlants.length) {
+            int capacity = usedSlots * 2;
+            slotPlants = Arrays.copyOf(slotPlants, capacity);
+            slotIds = Arrays.copyOf(slotIds, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+            nextCopy = Arrays.copyOf(nextCopy, capacity);
+        }
+        return usedSlots++;
+    }
+
+    /**
+     * Appends slot to the end of collection order
+     */
+    private void link(int slot) {
+        previous[slot] = last;
+        next[slot] = NONE;
+        nextCopy[slot] = NONE;
+        if (last == NONE) {
+            first = slot;
+        } else {
+            next[last] = slot;
+        }
+        last = slot;
+        if (orderedSlotsValid) {
+            if (size == orderedSlots.length) {
+                orderedSlots = Arrays.copyOf(orderedSlots, Math.max(INITIAL_CAPACITY, size * 2));
+            }
+            orderedSlots[size] = slot;
+        }
+        size++;
+    }
+
+    /**
+     * Unlinks slot from collection order and frees it, stops tracking its plant if no copy of it is left
+     */
+    private void removeSlot(int slot) {
+        Plant plant = slotPlants[slot];
+        slotById.remove(slotIds[slot]);
+        int firstCopy = firstSlot(plant);
+        if (firstCopy == slot) {
+            if (nextCopy[slot] == NONE) {
+                removeFirstSlot(slot);
+                untrack(slot);
+            } else {
+                replaceFirstSlot(slot, nextCopy[slot]);
+            }
+        } else {
+            int copy = firstCopy;
+            while (nextCopy[copy] != slot) {
+                copy = nextCopy[copy];
+            }
+            nextCopy[copy] = nextCopy[slot];
+        }
+
+        if (previous[slot] == NONE) {
+            first = next[slot];
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            last = previous[slot];
+        } else {
+            previous[next[slot]] = previous[slot];
+        }
+        size--;
+        orderedSlotsValid = false;
+
+        slotPlants[slot] = null;
+        next[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NONE);
+        return table;
+    }
+
+    private int tableIndex(Plant plant) {
+        int hash = plant.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (firstSlots.length - 1);
+    }
+
+    /**
+     * @return First slot of plant, NONE if the plant is not in the collection
+     */
+    private int firstSlot(Plant plant) {
+        for (int i = tableIndex(plant); firstSlots[i] != NONE; i = (i + 1) & (firstSlots.length - 1)) {
+            if (slotPlants[firstSlots[i]].equals(plant)) {
+                return firstSlots[i];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds slot of a plant which is not in the table yet
+     */
+    private void addFirstSlot(int slot) {
+        int i = tableIndex(slotPlants[slot]);
+        while (firstSlots[i] != NONE) {
+            i = (i + 1) & (firstSlots.length - 1);
+        }
+        firstSlots[i] = slot;
+        if (++plantCount * 2 > firstSlots.length) {
+            int[] oldSlots = firstSlots;
+            firstSlots = newTable(oldSlots.length * 2);
+            plantCount = 0;
+            for (int oldSlot : oldSlots) {
+                if (oldSlot != NONE) {
+                    addFirstSlot(oldSlot);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Index of table entry holding slot, which has to be in the table
+     */
+    private int tableEntry(int slot) {
+        int i = tableIndex(slotPlants[slot]);
+        while (firstSlots[i] != slot) {
+            i = (i + 1) & (firstSlots.length - 1);
+        }
+        return i;
+    }
+
+    /**
+     * Replaces first slot of a plant by another slot of the same plant
+     */
+    private void replaceFirstSlot(int slot, int newSlot) {
+        firstSlots[tableEntry(slot)] = newSlot;
+        Plant plant = slotPlants[slot];
+        if (wateringIndex != null) {
+            wateringIndex.remove(slot);
+            wateringIndex.add(newSlot);
+        }
+        if (nameIndex != null) {
+            nameIndex.remove(slot, plant.getName());
+            nameIndex.add(newSlot, plant.getName());
+        }
+        if (notesIndex != null) {
+            notesIndex.remove(slot, plant.getNotes());
+            notesIndex.add(newSlot, plant.getNotes());
+        }
+    }
+
+    private void removeFirstSlot(int slot) {
+        int mask = firstSlots.length - 1;
+        int gap = tableEntry(slot);
+        plantCount--;
+        // Shift back entries which would not be found with a gap in their probe sequence
+        for (int j = (gap + 1) & mask; firstSlots[j] != NONE; j = (j + 1) & mask) {
+            int home = tableIndex(slotPlants[firstSlots[j]]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                firstSlots[gap] = firstSlots[j];
+                gap = j;
+            }
+        }
+        firstSlots[gap] = NONE;
+    }
+
+    /**
+     * @return Slots in collection order, valid until the order changes
+     */
+    private int[] orderedSlots() {
+        if (!orderedSlotsValid) {
+            if (orderedSlots.length < size) {
+                orderedSlots = new int[size];
+            }
+            int index = 0;
+            for (int slot = first; slot != NONE; slot = next[slot]) {
+                orderedSlots[index++] = slot;
+            }
+            orderedSlotsValid = true;
+        }
+        return orderedSlots;
+    }
+
+    private void untrack(int slot) {
+        Plant plant = slotPlants[slot];
+        plant.removeObserver(observer);
+        if (wateringIndex != null) {
+            wateringIndex.remove(slot);
+        }
+        if (nameIndex != null) {
+            nameIndex.remove(slot, plant.getName());
+        }
+        if (notesIndex != null) {
+            notesIndex.remove(slot, plant.getNotes());
+        }
+    }
+
+    /**
+     * @return Whether plant is in the collection
+     */
+    boolean containsPlant(Plant plant) {
+        return firstSlot(plant) != NONE;
+    }
+
+    void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+        if (property == PlantProperty.LAST_WATERING_DATE || property == PlantProperty.WATERING_INTERVAL) {
+            if (!batchWatering && wateringIndex != null) {
+                wateringIndex.update(firstSlot(plant));
+            }
+        } else if (property == PlantProperty.NAME && nameIndex != null) {
+            nameIndex.rename(firstSlot(plant), (String) oldValue, plant.getName());
+        } else if (property == PlantProperty.NOTES && notesIndex != null) {
+            notesIndex.update(firstSlot(plant), (String) oldValue, plant.getNotes());
+        }
+        firePlantChanged(plant, property, oldValue);
+    }
+
+    public void addListener(PlantCollectionListener listener) {
+        listeners.add(listener);
+    }
+    public void removeListener(PlantCollectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    void firePlantAdded(Plant plant, long id) {
+        for (PlantCollectionListener listener : listeners) {
+            listener.plantAdded(plant, id);
+        }
+    }
+    void firePlantRemoved(Plant plant, long id) {
+        for (PlantCollectionListener listener : listeners) {
+            listener.plantRemoved(plant, id);
+        }
+    }
+    void firePlantChanged(Plant plant, PlantProperty property, Object oldValue) {
+        for (PlantCollectionListener listener : listeners) {
+            listener.plantChanged(plant, property, oldValue);
+        }
+    }
+    void firePlantsSorted(PlantProperty property) {
+        for (PlantCollectionListener listener : listeners) {
+            listener.plantsSorted(property);
+        }
     }
 
     public Plant getPlant(int index) {
-        if (index < 0 || index >= plants.size()) {
+        if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException("Invalid plant index: " + index);
         }
-        return plants.get(index);
+        return slotPlants[orderedSlots()[index]];
     }
     public List<Plant> getPlants() {
-        return new ArrayList<>(plants);
+        List<Plant> plants = new ArrayList<>(size);
+        for (int slot = first; slot != NONE; slot = next[slot]) {
+            plants.add(slotPlants[slot]);
+        }
+        return plants;
+    }
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Lazy stream of plants in collection order, the collection must not be modified while it is consumed
+     */
+    public Stream<Plant> stream() {
+        Iterator<Plant> iterator = new Iterator<>() {
+            private int slot = first;
+
+            @Override
+            public boolean hasNext() {
+                return slot != NONE;
+            }
+            @Override
+            public Plant next() {
+                if (slot == NONE) {
+                    throw new NoSuchElementException();
+                }
+                Plant plant = slotPlants[slot];
+                slot = next[slot];
+                return plant;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(iterator, size,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Returns view of plants kept sorted by given order. The view is created on first request,
+     * then it is updated with every change of the collection.
+     * @param order Order of the view
+     * @return Sorted view, the same object for every call with the same order
+     */
+    public SortedPlantView getSortedView(PlantOrder order) {
+        synchronized (sortedViews) {
+            return sortedViews.computeIfAbsent(order, this::createSortedView);
+        }
+    }
+
+    /**
+     * Fills new view with current plants and subscribes it to changes
+     */
+    SortedPlantView createSortedView(PlantOrder order) {
+        SortedPlantView view = new SortedPlantView(order);
+        stream().forEach(view.listener::plantAdded);
+        addListener(view.listener);
+        return view;
+    }
+
+    /**
+     * Returns feed of changes of this collection. The feed is created on first request,
+     * changes made before are not in it.
+     * @return Feed of changes, the same object for every call
+     */
+    public PlantChangeFeed getChangeFeed() {
+        synchronized (listeners) {
+            if (changeFeed == null) {
+                changeFeed = new PlantChangeFeed();
+                addListener(changeFeed.listener);
+            }
+            return changeFeed;
+        }
+    }
+
+    /**
+     * @return New query over plants of this collection
+     */
+    public PlantQuery query() {
+        return new PlantQuery(this::stream);
+    }
+
+    /**
+     * Records watering of plant on given date
+     * @param plant Watered plant
+     * @param date Date of watering
+     */
+    public void waterPlant(Plant plant, LocalDate date) {
+        plant.setLastWateringDate(date);
+    }
+
+    /**
+     * Applies batch of waterings in one pass. Events are applied in order, a watering not later than
+     * the last watering of its plant is ignored, so the latest of several events of a plant wins.
+     * In a large batch the watering index and sorted views are updated once for the whole batch
+     * instead of once per event, small batches are applied event by event.
+     * @param events Waterings to apply
+     * @return Outcome of every event, in order of events
+     */
+    public List<WateringOutcome> waterPlants(List<WateringEvent> events) {
+        WateringOutcome[] outcomes = new WateringOutcome[events.size()];
+        int[] positions = new int[events.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        deferViewUpdates(events.size(), () -> waterPlants(events, positions, outcomes));
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Applies events at given positions of the batch and stores their outcomes at the same positions
+     */
+    void waterPlants(List<WateringEvent> events, int[] positions, WateringOutcome[] outcomes) {
+        // Rebuilding the index pays off only when the batch changes a large part of it
+        if (wateringIndex == null || positions.length < MIN_DEFERRED_BATCH || positions.length * 2 < wateringIndex.size()) {
+            for (int position : positions) {
+                WateringEvent event = events.get(position);
+                outcomes[position] = water(event.plant(), event.date());
+            }
+            return;
+        }
+        int[] watered = new int[positions.length];
+        int wateredCount = 0;
+        batchWatering = true;
+        try {
+            for (int position : positions) {
+                WateringEvent event = events.get(position);
+                outcomes[position] = water(event.plant(), event.date());
+                if (outcomes[position] == WateringOutcome.APPLIED) {
+                    watered[wateredCount++] = firstSlot(event.plant());
+                }
+            }
+        } finally {
+            batchWatering = false;
+            wateringIndex.updateAll(watered, wateredCount);
+        }
+    }
+
+    private WateringOutcome water(Plant plant, LocalDate date) {
+        if (plant == null || !containsPlant(plant)) {
+            return WateringOutcome.NOT_FOUND;
+        } else if (date == null || date.isBefore(plant.getPlantedDate())) {
+            return WateringOutcome.INVALID_DATE;
+        } else if (!date.isAfter(plant.getLastWateringDate())) {
+            return WateringOutcome.SUPERSEDED;
+        }
+        plant.setLastWateringDate(date);
+        return WateringOutcome.APPLIED;
+    }
+
+    /**
+     * Runs a batch of given number of changes, during a large batch sorted views only collect changed
+     * plants and move each of them once when the batch ends
+     */
+    void deferViewUpdates(int changes, Runnable batch) {
+        List<SortedPlantView> views;
+        synchronized (sortedViews) {
+            views = changes < MIN_DEFERRED_BATCH ? List.of() : new ArrayList<>(sortedViews.values());
+        }
+        views.forEach(SortedPlantView::beginBatch);
+        try {
+            batch.run();
+        } finally {
+            views.forEach(SortedPlantView::endBatch);
+        }
     }
 
     public List<Plant> getPlantsByCondition(Predicate<Plant> condition) {
-        return plants.stream()
+        return stream()
                 .filter(condition)
                 .toList();
     }
 
+    /**
+     * @param name Exact name of plant
+     * @return Plants with given name in order of adding, looked up in hash index
+     */
+    public List<Plant> getPlantsByName(String name) {
+        return nameIndex().get(name);
+    }
+
+    /**
+     * Returns distinct plant names starting with prefix, e.g. for autocomplete
+     * @param prefix Prefix of name
+     * @param limit Maximum number of returned names
+     * @return Names in alphabetical order
+     */
+    public List<String> getNamesByPrefix(String prefix, int limit) {
+        return nameIndex().namesByPrefix(prefix, limit);
+    }
+
+    /**
+     * @param prefix Prefix of name
+     * @param limit Maximum number of returned plants
+     * @return Plants whose name starts with prefix, ordered by name
+     */
+    public List<Plant> getPlantsByNamePrefix(String prefix, int limit) {
+        return nameIndex().plantsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Full-text search in notes, e.g. "nezaleva" finds plants with notes "Nezalévá se".
+     * Words are compared whole, ignoring case and diacritics. The inverted index of notes is built
+     * by the first search, so collections which are never searched don't pay for it.
+     * @param words Words which all have to be in notes of returned plants
+     * @return Matching plants, looked up in inverted index of notes
+     */
+    public List<Plant> getPlantsByNotes(String words) {
+        return notesIndex().allTerms(words);
+    }
+
+    /**
+     * @param words Words of which at least one has to be in notes of returned plants
+     * @return Matching plants, looked up in inverted index of notes
+     */
+    public List<Plant> getPlantsByAnyNotes(String words) {
+        return notesIndex().anyTerm(words);
+    }
+
+    /**
+     * @param prefix Beginning of a word, e.g. "nezal"
+     * @return Plants with a word starting with prefix in their notes
+     */
+    public List<Plant> getPlantsByNotesPrefix(String prefix) {
+        return notesIndex().termPrefix(prefix);
+    }
+
+    /**
+     * @return Index of names keyed by first slots of plants, built on first use
+     */
+    private NameIndex nameIndex() {
+        if (nameIndex == null) {
+            NameIndex index = new NameIndex(slot -> slotIds[slot], slot -> slotPlants[slot]);
+            for (int slot : firstSlotsByAdding()) {
+                index.add(slot, slotPlants[slot].getName());
+            }
+            nameIndex = index;
+        }
+        return nameIndex;
+    }
+
+    private WateringIndex wateringIndex() {
+        if (wateringIndex == null) {
+            WateringIndex index = new WateringIndex(slot -> slotIds[slot], slot -> slotPlants[slot]);
+            for (int slot : firstSlotsByAdding()) {
+                index.add(slot);
+            }
+            wateringIndex = index;
+        }
+        return wateringIndex;
+    }
+
+    /**
+     * @return Index of notes keyed by first slots of plants, built on first use
+     */
+    private NotesIndex notesIndex() {
+        if (notesIndex == null) {
+            NotesIndex index = new NotesIndex(slot -> slotIds[slot], slot -> slotPlants[slot]);
+            for (int slot : firstSlotsByAdding()) {
+                index.add(slot, slotPlants[slot].getNotes());
+            }
+            notesIndex = index;
+        }
+        return notesIndex;
+    }
+
+    /**
+     * @return First slots of all plants in order of adding, which is the order indexes keep,
+     * so building an index only appends to its entries
+     */
+    private int[] firstSlotsByAdding() {
+        int[] slots = new int[plantCount];
+        int count = 0;
+        for (int slot : firstSlots) {
+            if (slot != NONE) {
+                slots[count++] = slot;
+            }
+        }
+        sortSlots(slots, count, (a, b) -> Long.compare(slotIds[a], slotIds[b]));
+        return slots;
+    }
+
+    /**
+     * Returns plants which need watering as of given date, i.e. their next watering date is before it.
+     * Uses index ordered by next watering date, most overdue plants come first and plants due
+     * on the same day are in order of adding.
+     * @param date Date the watering need is evaluated for
+     * @return Plants needing watering
+     */
+    public List<Plant> getPlantsToWater(LocalDate date) {
+        return wateringIndex().dueBefore(date.toEpochDay());
+    }
+
+    /**
+     * Returns plants whose next watering date falls within given number of days starting at given date
+     * @param from First day of the range
+     * @param days Length of the range in days
+     * @return Plants ordered by next watering date and then by order of adding
+     */
+    public List<Plant> getPlantsDueWithin(LocalDate from, int days) {
+        return wateringIndex().dueBetween(from.toEpochDay(), from.toEpochDay() + days);
+    }
+
+    /**
+     * Sorts the collection itself, which changes indexes of plants, ids of plants stay the same.
+     * Use getSortedView to iterate plants in order without sorting and without changing the collection.
+     */
     public void sortPlantsByLastWateringDate() {
-        plants.sort(Comparator.comparing(Plant::getLastWateringDate));
+        sort(Comparator.comparing(Plant::getLastWateringDate));
+        firePlantsSorted(PlantProperty.LAST_WATERING_DATE);
+    }
+    public void sortPlantsByName() {
+        sort(Comparator.naturalOrder());
+        firePlantsSorted(PlantProperty.NAME);
+    }
+
+    /**
+     * Stable sort of collection order, plants stay in their slots and only links between slots change
+     */
+    void sort(Comparator<? super Plant> comparator) {
+        int[] slots = Arrays.copyOf(orderedSlots(), size);
+        if (plantCount == size) {
+            // Every plant is in one slot only, so plants can be sorted directly and their slots looked up
+            Plant[] sorted = new Plant[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = slotPlants[slots[i]];
+            }
+            Arrays.sort(sorted, comparator);
+            for (int i = 0; i < size; i++) {
+                slots[i] = firstSlot(sorted[i]);
+            }
+        } else {
+            sortSlots(slots, size, (a, b) -> comparator.compare(slotPlants[a], slotPlants[b]));
+        }
+        first = NONE;
+        last = NONE;
+        size = 0;
+        orderedSlotsValid = true;
+        for (int slot : slots) {
+            int copy = nextCopy[slot];
+            link(slot);
+            nextCopy[slot] = copy;
+        }
+    }
+
+    /**
+     * Stable merge sort of slots using comparator of two slots
+     */
+    static void sortSlots(int[] slots, int length, IntBinaryOperator comparator) {
+        if (length < 2) {
+            return;
+        }
+        int[] buffer = new int[length];
+        for (int width = 1; width < length; width *= 2) {
+            for (int from = 0; from < length - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, length);
+                if (comparator.applyAsInt(slots[middle - 1], slots[middle]) <= 0) {
+                    continue;
+                }
+                int left = from, right = middle, target = from;
+                while (left < middle && right < to) {
+                    buffer[target++] = comparator.applyAsInt(slots[left], slots[right]) <= 0
+                            ? slots[left++] : slots[right++];
+                }
+                while (left < middle) buffer[target++] = slots[left++];
+                while (right < to) buffer[target++] = slots[right++];
+                System.arraycopy(buffer, from, slots, from, to - from);
+            }
+        }
     }
-}
\ No newline at end of file
+}
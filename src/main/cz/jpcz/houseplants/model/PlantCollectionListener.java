@@ -0,0 +1,40 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Listener of changes of a PlantCollection, notified after each change.
+ * Listeners of thread-safe collections may be notified from several threads at once.
+ */
+public interface PlantCollectionListener {
+
+    default void plantAdded(Plant plant) {}
+
+    /**
+     * Collections notify added plants by this method, listeners which don't need the id override plantAdded(Plant)
+     * @param id Id of the plant in the collection, a plant added more than once has a different id for each copy
+     */
+    default void plantAdded(Plant plant, long id) {
+        plantAdded(plant);
+    }
+
+    default void plantRemoved(Plant plant) {}
+
+    /**
+     * Collections notify removed plants by this method, listeners which don't need the id override plantRemoved(Plant)
+     * @param id Id the removed copy of the plant had in the collection
+     */
+    default void plantRemoved(Plant plant, long id) {
+        plantRemoved(plant);
+    }
+
+    /**
+     * @param plant Changed plant
+     * @param property Changed property
+     * @param oldValue Value of the property before the change
+     */
+    default void plantChanged(Plant plant, PlantProperty property, Object oldValue) {}
+
+    /**
+     * Collection was sorted by given property (NAME or LAST_WATERING_DATE)
+     */
+    default void plantsSorted(PlantProperty property) {}
+}
@@ -0,0 +1,48 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merging of plant lists that are already ordered, e.g. results of partitioned collections
+ */
+public final class PlantMerge {
+
+    private PlantMerge() {}
+
+    /**
+     * K-way merge of lists, each of them already ordered by comparator.
+     * Equal plants from earlier lists come first.
+     * @param lists Ordered lists
+     * @param comparator Order of the lists
+     * @return New list with all plants in comparator order
+     */
+    public static List<Plant> mergeSorted(List<? extends List<Plant>> lists, Comparator<Plant> comparator) {
+        int size = 0;
+        for (List<Plant> list : lists) {
+            size += list.size();
+        }
+
+        PriorityQueue<int[]> cursors = new PriorityQueue<>((a, b) -> {
+            int result = comparator.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+            return result != 0 ? result : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                cursors.add(new int[] {i, 0});
+            }
+        }
+        List<Plant> merged = new ArrayList<>(size);
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            List<Plant> list = lists.get(cursor[0]);
+            merged.add(list.get(cursor[1]));
+            if (++cursor[1] < list.size()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,15 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Observer notified after a property of a Plant has changed,
+ * used by collections to keep their indexes up to date
+ */
+interface PlantObserver {
+
+    /**
+     * @param plant Changed plant
+     * @param property Changed property
+     * @param oldValue Value of the property before the change
+     */
+    void plantChanged(Plant plant, PlantProperty property, Object oldValue);
+}
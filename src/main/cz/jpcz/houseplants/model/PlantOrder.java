@@ -0,0 +1,46 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Orderings of plants maintained by SortedPlantView, also used to sort plant files
+ */
+public enum PlantOrder {
+    NAME(Plant::getName, PlantProperty.NAME),
+    LAST_WATERING_DATE(Plant::getLastWateringDate, PlantProperty.LAST_WATERING_DATE),
+    NEXT_WATERING_DATE(WateringIndex::nextWateringDay, PlantProperty.LAST_WATERING_DATE, PlantProperty.WATERING_INTERVAL),
+    PLANTED_DATE(Plant::getPlantedDate, PlantProperty.PLANTED_DATE);
+
+    private final Function<Plant, Comparable<?>> key;
+    private final PlantProperty[] properties;
+
+    PlantOrder(Function<Plant, Comparable<?>> key, PlantProperty... properties) {
+        this.key = key;
+        this.properties = properties;
+    }
+
+    Comparable<?> key(Plant plant) {
+        return key.apply(plant);
+    }
+
+    /**
+     * @return Comparator of plants by this order
+     */
+    @SuppressWarnings("unchecked")
+    public Comparator<Plant> comparator() {
+        return (a, b) -> ((Comparable<Object>) key(a)).compareTo(key(b));
+    }
+
+    /**
+     * @return true if change of property can change position of plant in this order
+     */
+    boolean dependsOn(PlantProperty property) {
+        for (PlantProperty dependency : properties) {
+            if (dependency == property) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,12 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Mutable properties of a Plant
+ */
+public enum PlantProperty {
+    NAME,
+    NOTES,
+    WATERING_INTERVAL,
+    PLANTED_DATE,
+    LAST_WATERING_DATE
+}
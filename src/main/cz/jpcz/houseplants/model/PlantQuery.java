@@ -0,0 +1,144 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Lazily evaluated query over plants of a PlantCollection.
+ * <p>
+ * Conditions, ordering and paging are collected first and applied only when the query is run,
+ * so plants are streamed from the collection instead of being copied into intermediate lists.
+ * Sorting with a limit keeps only the first offset + limit plants in a bounded heap.
+ * The query is evaluated against the collection at the time it is run, every run sees current plants.
+ */
+public class PlantQuery {
+
+    private final Supplier<Stream<Plant>> source;
+    private Predicate<Plant> condition;
+    private Comparator<Plant> order;
+    private long offset;
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * Plant with its position in the source, used to keep sorting stable
+     */
+    private record Ranked(Plant plant, long position) {}
+
+    PlantQuery(Supplier<Stream<Plant>> source) {
+        this.source = source;
+    }
+
+    /**
+     * Adds condition, plants have to satisfy all added conditions
+     */
+    public PlantQuery where(Predicate<Plant> condition) {
+        this.condition = this.condition == null ? condition : this.condition.and(condition);
+        return this;
+    }
+
+    /**
+     * Orders results, plants equal by comparator keep collection order
+     */
+    public PlantQuery sortedBy(Comparator<Plant> order) {
+        this.order = order;
+        return this;
+    }
+
+    public PlantQuery skip(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    public PlantQuery limit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param page Index of page, starting at 0
+     * @param pageSize Number of plants per page
+     */
+    public PlantQuery page(int page, int pageSize) {
+        if (page < 0 || pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+        }
+        return skip((long) page * pageSize).limit(pageSize);
+    }
+
+    /**
+     * @return Lazy stream of results
+     */
+    public Stream<Plant> stream() {
+        Stream<Plant> plants = filtered();
+        if (order == null) {
+            return plants.skip(offset).limit(limit);
+        }
+        long bound = offset + limit;
+        if (limit == Long.MAX_VALUE || bound < 0 || bound > Integer.MAX_VALUE - 8) {
+            return plants.sorted(order).skip(offset).limit(limit);
+        }
+        return topRanked(plants, (int) bound).stream().skip(offset);
+    }
+
+    public List<Plant> toList() {
+        return stream().toList();
+    }
+
+    public void forEach(Consumer<Plant> action) {
+        stream().forEach(action);
+    }
+
+    /**
+     * Counts results without creating any list, ordering is ignored
+     */
+    public long count() {
+        long matching = filtered().count();
+        return Math.max(0, Math.min(limit, matching - offset));
+    }
+
+    private Stream<Plant> filtered() {
+        Stream<Plant> plants = source.get();
+        return condition == null ? plants : plants.filter(condition);
+    }
+
+    /**
+     * @return First plants by order, at most bound of them, sorted
+     */
+    private List<Plant> topRanked(Stream<Plant> plants, int bound) {
+        if (bound == 0) {
+            return List.of();
+        }
+        Comparator<Ranked> ranking = Comparator.comparing(Ranked::plant, order).thenComparingLong(Ranked::position);
+        // Heap keeps the worst of kept plants on top, so it can be replaced by a better one
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.min(bound, 1024) + 1, ranking.reversed());
+        long[] position = {0};
+        plants.forEachOrdered(plant -> {
+            Ranked ranked = new Ranked(plant, position[0]++);
+            if (heap.size() < bound) {
+                heap.add(ranked);
+            } else if (ranking.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        });
+        List<Ranked> sorted = new ArrayList<>(heap);
+        sorted.sort(ranking);
+        List<Plant> result = new ArrayList<>(sorted.size());
+        for (Ranked ranked : sorted) {
+            result.add(ranked.plant());
+        }
+        return result;
+    }
+}
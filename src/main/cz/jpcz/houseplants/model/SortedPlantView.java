@@ -0,0 +1,220 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Read-only view of plants of a PlantCollection kept sorted by a PlantOrder.
+ * <p>
+ * The view follows additions, removals and changes of the collection, each of them costs O(log n),
+ * so it can be iterated at any moment without sorting. Plants with equal keys keep the order
+ * in which they were added. The order of the collection itself is not affected. While the collection
+ * applies a large batch, changed plants keep their old position and move once when the batch ends.
+ * Iteration is weakly consistent: it does not fail on concurrent changes, but may or may not reflect them.
+ */
+public class SortedPlantView implements Iterable<Plant> {
+
+    private static final Comparator<Object> KEY_ORDER = Comparator.nullsFirst(SortedPlantView::compareKeys);
+    private static final Comparator<Entry> ENTRY_ORDER =
+            Comparator.comparing((Entry entry) -> (Object) entry.key, KEY_ORDER).thenComparingLong(entry -> entry.sequence);
+
+    private final PlantOrder order;
+    // Replaced as a whole when a batch changed most plants, changes of single plants hold the read lock
+    private volatile NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ENTRY_ORDER);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Plant, Entry> entryByPlant = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    // Number of running batches and plants changed during them, updated when the last batch ends
+    private final AtomicInteger batches = new AtomicInteger();
+    private final Set<Plant> deferred = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Position of a plant in the view
+     * @param count Number of times the plant is in the collection
+     */
+    private record Entry(Plant plant, Comparable<?> key, long sequence, int count) {}
+
+    final PlantCollectionListener listener = new PlantCollectionListener() {
+        @Override
+        public void plantAdded(Plant plant) {
+            lock.readLock().lock();
+            try {
+                add(plant);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        @Override
+        public void plantRemoved(Plant plant) {
+            lock.readLock().lock();
+            try {
+                remove(plant);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        @Override
+        public void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+            if (order.dependsOn(property)) {
+                if (batches.get() == 0) {
+                    update(plant);
+                } else {
+                    deferred.add(plant);
+                    // The batch may have ended before the plant was added
+                    if (batches.get() == 0 && deferred.remove(plant)) {
+                        update(plant);
+                    }
+                }
+            }
+        }
+    };
+
+    SortedPlantView(PlantOrder order) {
+        this.order = order;
+    }
+
+    public PlantOrder getOrder() {
+        return order;
+    }
+
+    void beginBatch() {
+        batches.incrementAndGet();
+    }
+
+    /**
+     * Moves plants changed during batches when the last of them ends. When most plants changed,
+     * the entries are sorted again at once instead of moving plants one by one.
+     */
+    void endBatch() {
+        if (batches.decrementAndGet() != 0) {
+            return;
+        }
+        if (deferred.size() * 2 >= size.get()) {
+            lock.writeLock().lock();
+            try {
+                deferred.clear();
+                sortAgain();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        for (Plant plant : deferred) {
+            if (deferred.remove(plant)) {
+                update(plant);
+            }
+        }
+    }
+
+    /**
+     * Recomputes keys of all plants and replaces entries by newly sorted ones, holding the write lock
+     */
+    private void sortAgain() {
+        Entry[] sorted = new Entry[entryByPlant.size()];
+        int count = 0;
+        for (Entry entry : entries) {
+            sorted[count++] = new Entry(entry.plant, order.key(entry.plant), entry.sequence, entry.count);
+        }
+        // Mostly sorted already when plants kept their relative order, which the merge sort makes linear
+        Arrays.sort(sorted, 0, count, ENTRY_ORDER);
+        NavigableSet<Entry> newEntries = new ConcurrentSkipListSet<>(ENTRY_ORDER);
+        for (int i = 0; i < count; i++) {
+            newEntries.add(sorted[i]);
+            entryByPlant.put(sorted[i].plant, sorted[i]);
+        }
+        entries = newEntries;
+    }
+
+    private void add(Plant plant) {
+        Entry entry = entryByPlant.get(plant);
+        if (entry == null) {
+            entry = new Entry(plant, order.key(plant), sequence.getAndIncrement(), 1);
+            entries.add(entry);
+        } else {
+            entry = new Entry(entry.plant, entry.key, entry.sequence, entry.count + 1);
+            entries.remove(entry);
+            entries.add(entry);
+        }
+        entryByPlant.put(plant, entry);
+        size.incrementAndGet();
+    }
+
+    private void remove(Plant plant) {
+        Entry entry = entryByPlant.get(plant);
+        if (entry == null) {
+            return;
+        }
+        entries.remove(entry);
+        if (entry.count > 1) {
+            entry = new Entry(entry.plant, entry.key, entry.sequence, entry.count - 1);
+            entries.add(entry);
+            entryByPlant.put(plant, entry);
+        } else {
+            entryByPlant.remove(plant);
+        }
+        size.decrementAndGet();
+    }
+
+    private void update(Plant plant) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entryByPlant.get(plant);
+            if (entry == null) {
+                return;
+            }
+            Comparable<?> key = order.key(plant);
+            if (KEY_ORDER.compare(entry.key, key) != 0) {
+                entries.remove(entry);
+                entry = new Entry(entry.plant, key, entry.sequence, entry.count);
+                entries.add(entry);
+                entryByPlant.put(plant, entry);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return Lazy stream of plants in view order
+     */
+    public Stream<Plant> stream() {
+        return entries.stream().flatMap(entry -> entry.count == 1
+                ? Stream.of(entry.plant)
+                : Collections.nCopies(entry.count, entry.plant).stream());
+    }
+
+    @Override
+    public Iterator<Plant> iterator() {
+        return stream().iterator();
+    }
+
+    /**
+     * @param limit Maximum number of returned plants
+     * @return First plants in view order
+     */
+    public List<Plant> getFirst(int limit) {
+        return stream().limit(limit).toList();
+    }
+}
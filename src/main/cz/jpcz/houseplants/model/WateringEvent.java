@@ -0,0 +1,11 @@
+package cz.jpcz.houseplants.model;
+
+import java.time.LocalDate;
+
+/**
+ * Watering of a plant reported e.g. by an irrigation controller, applied in batches by
+ * {@link PlantCollection#waterPlants(java.util.List)}
+ * @param plant Watered plant
+ * @param date Date of watering
+ */
+public record WateringEvent(Plant plant, LocalDate date) {}
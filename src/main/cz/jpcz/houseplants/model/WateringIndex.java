@@ -0,0 +1,142 @@
+package cz.jpcz.houseplants.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Index of plants ordered by the epoch day of their next watering.
+ * Plants are indexed by int keys given by the collection, e.g. their slots, and plants with
+ * the same next watering day are ordered by rank of their keys, however the index was updated.
+ */
+class WateringIndex {
+
+    private static final long NOT_INDEXED = Long.MIN_VALUE;
+
+    private final NavigableMap<Long, IndexKeys> keysByDay = new TreeMap<>();
+    // Indexed day of each key, keys are small and dense like slots
+    private long[] dayByKey = new long[0];
+    private int size;
+    private final IntToLongFunction rank;
+    private final IntFunction<Plant> plant;
+
+    /**
+     * @param rank Order of plants with the same day, unique for each key
+     * @param plant Plant of a key
+     */
+    WateringIndex(IntToLongFunction rank, IntFunction<Plant> plant) {
+        this.rank = rank;
+        this.plant = plant;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static long nextWateringDay(Plant plant) {
+        return plant.getLastWateringDate().toEpochDay() + plant.getWateringInterval().toDays();
+    }
+
+    void add(int key) {
+        if (key >= dayByKey.length) {
+            int oldLength = dayByKey.length;
+            dayByKey = Arrays.copyOf(dayByKey, Math.max(16, Math.max(key + 1, oldLength * 2)));
+            Arrays.fill(dayByKey, oldLength, dayByKey.length, NOT_INDEXED);
+        }
+        if (dayByKey[key] == NOT_INDEXED) {
+            long day = nextWateringDay(plant.apply(key));
+            dayByKey[key] = day;
+            keysByDay.computeIfAbsent(day, d -> new IndexKeys()).add(key, rank);
+            size++;
+        }
+    }
+
+    void remove(int key) {
+        if (key < dayByKey.length && dayByKey[key] != NOT_INDEXED) {
+            removeFromDay(key, dayByKey[key]);
+            dayByKey[key] = NOT_INDEXED;
+            size--;
+        }
+    }
+
+    void update(int key) {
+        if (key < dayByKey.length && dayByKey[key] != NOT_INDEXED) {
+            long day = nextWateringDay(plant.apply(key));
+            if (day != dayByKey[key]) {
+                removeFromDay(key, dayByKey[key]);
+                dayByKey[key] = day;
+                keysByDay.computeIfAbsent(day, d -> new IndexKeys()).add(key, rank);
+            }
+        }
+    }
+
+    /**
+     * Updates days of many changed keys at once. When most of the indexed plants changed,
+     * the index is rebuilt in one pass instead of moving plants between days one by one.
+     * Both ways give the same order.
+     */
+    void updateAll(int[] changed, int count) {
+        if (count * 2 < size) {
+            for (int i = 0; i < count; i++) {
+                update(changed[i]);
+            }
+            return;
+        }
+        int[] keys = new int[size];
+        int index = 0;
+        for (IndexKeys dayKeys : keysByDay.values()) {
+            for (int i = 0; i < dayKeys.size(); i++) {
+                keys[index++] = dayKeys.get(i);
+            }
+        }
+        for (int key : keys) {
+            dayByKey[key] = nextWateringDay(plant.apply(key));
+        }
+        // Sorted by day and rank, so every key is appended to its day
+        PlantCollection.sortSlots(keys, keys.length, (a, b) -> dayByKey[a] != dayByKey[b]
+                ? Long.compare(dayByKey[a], dayByKey[b]) : Long.compare(rank.applyAsLong(a), rank.applyAsLong(b)));
+        keysByDay.clear();
+        for (int key : keys) {
+            keysByDay.computeIfAbsent(dayByKey[key], d -> new IndexKeys()).add(key, rank);
+        }
+    }
+
+    /**
+     * @return Plants whose next watering day is before given day, most overdue first
+     */
+    List<Plant> dueBefore(long epochDay) {
+        return collect(keysByDay.headMap(epochDay, false));
+    }
+
+    /**
+     * @return Plants whose next watering day is in range [fromDay, toDay)
+     */
+    List<Plant> dueBetween(long fromDay, long toDay) {
+        if (fromDay >= toDay) {
+            return new ArrayList<>();
+        }
+        return collect(keysByDay.subMap(fromDay, true, toDay, false));
+    }
+
+    private void removeFromDay(int key, long day) {
+        IndexKeys keys = keysByDay.get(day);
+        keys.remove(key, rank);
+        if (keys.size() == 0) {
+            keysByDay.remove(day);
+        }
+    }
+
+    private List<Plant> collect(NavigableMap<Long, IndexKeys> days) {
+        List<Plant> plants = new ArrayList<>();
+        for (IndexKeys keys : days.values()) {
+            for (int i = 0; i < keys.size(); i++) {
+                plants.add(plant.apply(keys.get(i)));
+            }
+        }
+        return plants;
+    }
+}
@@ -0,0 +1,15 @@
+package cz.jpcz.houseplants.model;
+
+/**
+ * Result of one event of a batch applied by {@link PlantCollection#waterPlants(java.util.List)}
+ */
+public enum WateringOutcome {
+    /** Last watering date of the plant was set to the date of the event */
+    APPLIED,
+    /** Plant was already watered on the date or later, e.g. by an earlier event of the batch */
+    SUPERSEDED,
+    /** Plant is not in the collection */
+    NOT_FOUND,
+    /** Date is missing or before the plant was planted */
+    INVALID_DATE
+}
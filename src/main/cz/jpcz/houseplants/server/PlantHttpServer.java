@@ -0,0 +1,360 @@
+package cz.jpcz.houseplants.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.ConcurrentPlantCollection;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.PlantCollectionListener;
+import cz.jpcz.houseplants.model.PlantProperty;
+import cz.jpcz.houseplants.model.WateringEvent;
+import cz.jpcz.houseplants.model.WateringOutcome;
+import cz.jpcz.houseplants.service.PlantService;
+import cz.jpcz.houseplants.util.ConsoleColor;
+import cz.jpcz.houseplants.util.DebugManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Embedded HTTP server exposing plants of a PlantService as JSON.
+ * <p>
+ * Every request is handled on its own virtual thread. Reports over many plants (list, unwatered
+ * plants, search) are rendered once and served from a cache until any plant of the collection is
+ * added, removed or changed, by the server or by anyone else. Collections other than
+ * ConcurrentPlantCollection are not thread-safe, so requests on them are serialized by a lock.
+ * <pre>
+ * GET  /plants?offset=0&amp;limit=100        plants in collection order
+ * GET  /plants/{id}                         one plant
+ * POST /plants/{id}/water?date=2025-01-01   waters plant, today when date is missing
+ * GET  /plants/unwatered?date=&amp;limit=      plants needing watering, most overdue first
+ * GET  /plants/search?notes=words&amp;limit=   plants whose notes contain all words,
+ *                                           also any=words, prefix=word or name=exact name
+ *
+ * Usage: PlantHttpServer file [port]   (default port 8080)
+ * </pre>
+ */
+public class PlantHttpServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 10_000;
+    private static final int CACHE_CAPACITY = 1024;
+    private static final String CONTEXT = "/plants";
+
+    private record Response(int status, byte[] body) {}
+
+    /**
+     * Call of the service which may fail on invalid input
+     */
+    @FunctionalInterface
+    private interface ServiceCall<T> {
+        T call() throws PlantException;
+    }
+
+    private final PlantService plantService;
+    private final PlantCollection plantCollection;
+    private final Lock collectionLock;
+    private final ResponseCache cache = new ResponseCache(CACHE_CAPACITY);
+    private final PlantCollectionListener invalidation = new PlantCollectionListener() {
+        @Override
+        public void plantAdded(Plant plant) {
+            cache.invalidate();
+        }
+        @Override
+        public void plantRemoved(Plant plant) {
+            cache.invalidate();
+        }
+        @Override
+        public void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+            cache.invalidate();
+        }
+        @Override
+        public void plantsSorted(PlantProperty property) {
+            cache.invalidate();
+        }
+    };
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param plantService Service whose plants are served
+     * @param address Address to listen on, port 0 picks a free port
+     */
+    public PlantHttpServer(PlantService plantService, InetSocketAddress address) throws IOException {
+        this.plantService = plantService;
+        this.plantCollection = plantService.getPlantCollection();
+        this.collectionLock = plantCollection instanceof ConcurrentPlantCollection ? null : new ReentrantLock();
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+    }
+    /**
+     * Listens on the loopback address only
+     */
+    public PlantHttpServer(PlantService plantService, int port) throws IOException {
+        this(plantService, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            DebugManager.printError("Usage: PlantHttpServer file [port]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        PlantService plantService = new PlantService(new ConcurrentPlantCollection());
+        plantService.loadFromFile(args[0]);
+        try {
+            PlantHttpServer server = new PlantHttpServer(plantService, port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "plant-http-server-stop"));
+            System.out.printf("Serving %,d plants on http://localhost:%d%s%n",
+                    plantService.getPlantCollection().size(), server.getPort(), CONTEXT);
+        } catch (IOException e) {
+            DebugManager.printError("Server failed: " + e.getMessage());
+        }
+    }
+
+    public void start() {
+        plantCollection.addListener(invalidation);
+        server.start();
+        DebugManager.print(ConsoleColor.BLUE + "HTTP server listening on " + server.getAddress());
+    }
+
+    /**
+     * Stops accepting requests, requests being handled are given one second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        plantCollection.removeListener(invalidation);
+    }
+
+    /**
+     * @return Port the server listens on, useful when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    private void handle(HttpExchange exchange) {
+        Response response;
+        try {
+            response = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            response = error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            DebugManager.printError("Request " + exchange.getRequestURI() + " failed: " + e);
+            response = error(500, "Internal error");
+        }
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status(), response.body().length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response.body());
+            }
+        } catch (IOException e) {
+            DebugManager.printError("Response to " + exchange.getRequestURI() + " failed: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(String method, String path, Map<String, String> query) {
+        String[] segments = path.substring(CONTEXT.length()).replaceAll("^/+|/+$", "").split("/");
+        boolean get = method.equals("GET");
+        if (segments.length == 1 && segments[0].isEmpty()) {
+            return get ? listPlants(query) : error(405, "Method not allowed");
+        }
+        if (segments.length == 1 && segments[0].equals("unwatered")) {
+            return get ? unwateredPlants(query) : error(405, "Method not allowed");
+        }
+        if (segments.length == 1 && segments[0].equals("search")) {
+            return get ? searchPlants(query) : error(405, "Method not allowed");
+        }
+        long id = parseId(segments[0]);
+        if (segments.length == 1) {
+            return get ? getPlant(id) : error(405, "Method not allowed");
+        }
+        if (segments.length == 2 && segments[1].equals("water")) {
+            return method.equals("POST") ? waterPlant(id, query) : error(405, "Method not allowed");
+        }
+        return error(404, "Unknown path " + path);
+    }
+
+    private Response listPlants(Map<String, String> query) {
+        int offset = parseInt(query, "offset", 0, Integer.MAX_VALUE);
+        int limit = parseInt(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+        return cached("list:" + offset + ":" + limit, () -> {
+            StringBuilder json = new StringBuilder("{\"total\":").append(plantCollection.size())
+                    .append(",\"offset\":").append(offset).append(',');
+            try (Stream<Plant> plants = plantCollection.stream()) {
+                return appendPlants(json, plants.skip(offset).limit(limit).toList());
+            }
+        });
+    }
+
+    private Response unwateredPlants(Map<String, String> query) {
+        LocalDate date = query.containsKey("date") ? LocalDate.parse(query.get("date")) : plantService.getToday();
+        int limit = parseInt(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+        return cached("unwatered:" + date + ":" + limit, () -> {
+            List<Plant> plants = plantService.getUnWateredPlants(date);
+            StringBuilder json = new StringBuilder("{\"date\":\"").append(date)
+                    .append("\",\"total\":").append(plants.size()).append(',');
+            return appendPlants(json, plants.subList(0, Math.min(limit, plants.size())));
+        });
+    }
+
+    private Response searchPlants(Map<String, String> query) {
+        int limit = parseInt(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+        String kind = Stream.of("notes", "any", "prefix", "name").filter(query::containsKey).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("One of notes, any, prefix or name is required"));
+        String text = query.get(kind);
+        return cached("search:" + kind + ":" + limit + ":" + text, () -> {
+            List<Plant> plants = switch (kind) {
+                case "notes" -> plantCollection.getPlantsByNotes(text);
+                case "any" -> plantCollection.getPlantsByAnyNotes(text);
+                case "prefix" -> plantCollection.getPlantsByNotesPrefix(text);
+                default -> plantCollection.getPlantsByName(text);
+            };
+            StringBuilder json = new StringBuilder("{\"total\":").append(plants.size()).append(',');
+            return appendPlants(json, plants.subList(0, Math.min(limit, plants.size())));
+        });
+    }
+
+    private Response getPlant(long id) {
+        try {
+            return new Response(200, locked(() -> {
+                Plant plant = plantService.getPlantById(id);
+                return bytes(PlantJson.appendPlant(new StringBuilder(), id, plant));
+            }));
+        } catch (PlantException e) {
+            return error(404, e.getMessage());
+        }
+    }
+
+    private Response waterPlant(long id, Map<String, String> query) {
+        LocalDate date = query.containsKey("date") ? LocalDate.parse(query.get("date")) : plantService.getToday();
+        try {
+            return locked(() -> {
+                Plant plant = plantService.getPlantById(id);
+                WateringOutcome outcome = plantService.waterPlants(List.of(new WateringEvent(plant, date))).get(0);
+                StringBuilder json = new StringBuilder("{\"outcome\":\"").append(outcome).append("\",\"plant\":");
+                byte[] body = bytes(PlantJson.appendPlant(json, id, plant).append('}'));
+                return switch (outcome) {
+                    case APPLIED, SUPERSEDED -> new Response(200, body);
+                    case INVALID_DATE -> new Response(400, body);
+                    case NOT_FOUND -> error(404, "Plant with id " + id + " not found.");
+                };
+            });
+        } catch (PlantException e) {
+            return error(404, e.getMessage());
+        }
+    }
+
+    private Response cached(String key, ServiceCall<byte[]> render) {
+        return new Response(200, cache.get(key, () -> {
+            try {
+                return locked(render);
+            } catch (PlantException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+    }
+
+    private <T> T locked(ServiceCall<T> call) throws PlantException {
+        if (collectionLock == null) {
+            return call.call();
+        }
+        collectionLock.lock();
+        try {
+            return call.call();
+        } finally {
+            collectionLock.unlock();
+        }
+    }
+
+    private byte[] appendPlants(StringBuilder json, List<Plant> plants) {
+        json.append("\"plants\":[");
+        for (int i = 0; i < plants.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Plant plant = plants.get(i);
+            PlantJson.appendPlant(json, plantCollection.getPlantId(plant), plant);
+        }
+        return bytes(json.append("]}"));
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, bytes(PlantJson.appendString(new StringBuilder("{\"error\":"), message).append('}')));
+    }
+
+    private static byte[] bytes(StringBuilder json) {
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseId(String segment) {
+        try {
+            return Long.parseLong(segment);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid plant id: " + segment);
+        }
+    }
+
+    private static int parseInt(Map<String, String> query, String name, int defaultValue, int max) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0 || parsed > max) {
+                throw new IllegalArgumentException(name + " must be in range [0, " + max + "]: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            query.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
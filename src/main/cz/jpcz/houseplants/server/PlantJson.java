@@ -0,0 +1,55 @@
+package cz.jpcz.houseplants.server;
+
+import cz.jpcz.houseplants.model.Plant;
+
+/**
+ * Writes plants as JSON objects, only what the HTTP API needs, so no JSON library is required
+ */
+final class PlantJson {
+
+    private PlantJson() {}
+
+    /**
+     * Appends plant as object with its id, values and next watering date
+     */
+    static StringBuilder appendPlant(StringBuilder json, long id, Plant plant) {
+        json.append("{\"id\":").append(id).append(",\"name\":");
+        appendString(json, plant.getName());
+        json.append(",\"notes\":");
+        appendString(json, plant.getNotes());
+        json.append(",\"wateringIntervalDays\":").append(plant.getWateringInterval().toDays())
+                .append(",\"plantedDate\":\"").append(plant.getPlantedDate())
+                .append("\",\"lastWateringDate\":\"").append(plant.getLastWateringDate())
+                .append("\",\"nextWateringDate\":\"").append(plant.getNextWateringDate())
+                .append("\"}");
+        return json;
+    }
+
+    /**
+     * Appends quoted string with characters escaped as required by JSON, null as null
+     */
+    static StringBuilder appendString(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"');
+    }
+}
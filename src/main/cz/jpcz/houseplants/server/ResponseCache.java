@@ -0,0 +1,88 @@
+package cz.jpcz.houseplants.server;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of rendered response bodies which is invalidated explicitly when plants change.
+ * <p>
+ * Every invalidation starts a new generation and a body is served only in the generation it was
+ * rendered in, so a response rendered from plants before a change is never served after the change.
+ * Requests missing the same key at once wait for one rendering instead of each rendering the body,
+ * which matters right after an invalidation, when every client misses.
+ */
+class ResponseCache {
+
+    private record Entry(long generation, CompletableFuture<byte[]> body) {}
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of cached bodies, further bodies are rendered but not cached
+     */
+    ResponseCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param render Renders the body, called when key is not cached in the current generation
+     * @return Cached or newly rendered body
+     */
+    byte[] get(String key, Supplier<byte[]> render) {
+        long current = generation.get();
+        Entry entry = entries.get(key);
+        if (entry == null || entry.generation() != current) {
+            Entry rendering = new Entry(current, new CompletableFuture<>());
+            entry = entries.compute(key, (k, cached) -> cached != null && cached.generation() == current ? cached
+                    : cached == null && entries.size() >= capacity ? null : rendering);
+            if (entry == rendering) {
+                misses.increment();
+                return render(key, rendering, render);
+            }
+            if (entry == null) {
+                // Cache is full, the body is rendered for this request only
+                misses.increment();
+                return render.get();
+            }
+        }
+        hits.increment();
+        try {
+            return entry.body().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private byte[] render(String key, Entry entry, Supplier<byte[]> render) {
+        try {
+            byte[] body = render.get();
+            entry.body().complete(body);
+            return body;
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.body().completeExceptionally(e);
+            throw e;
+        }
+    }
+}
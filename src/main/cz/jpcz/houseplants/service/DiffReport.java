@@ -0,0 +1,13 @@
+package cz.jpcz.houseplants.service;
+
+/**
+ * Counts of differences found between two inventory files
+ */
+public record DiffReport(long added, long removed, long changed, long unchanged) {
+
+    @Override
+    public String toString() {
+        return String.format("Added %d, removed %d, changed %d, unchanged %d plants",
+                added, removed, changed, unchanged);
+    }
+}
@@ -0,0 +1,12 @@
+package cz.jpcz.houseplants.service;
+
+/**
+ * Compression of exported plant files
+ */
+public enum ExportCompression {
+    NONE,
+    /** Gzip with the fastest deflate level, readable by any gzip tool */
+    GZIP_FAST,
+    /** Gzip with the default deflate level, smaller but slower than GZIP_FAST */
+    GZIP
+}
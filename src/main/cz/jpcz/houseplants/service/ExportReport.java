@@ -0,0 +1,19 @@
+package cz.jpcz.houseplants.service;
+
+import java.io.File;
+
+/**
+ * Summary of a finished export
+ * @param file Written file
+ * @param plants Number of exported plants
+ * @param bytes Size of the written file
+ * @param elapsedNanos Duration of encoding and writing, without taking the snapshot
+ */
+public record ExportReport(File file, int plants, long bytes, long elapsedNanos) {
+
+    @Override
+    public String toString() {
+        return String.format("Exported %d plants to %s (%d bytes) in %.1f ms",
+                plants, file, bytes, elapsedNanos / 1_000_000d);
+    }
+}
@@ -0,0 +1,80 @@
+package cz.jpcz.houseplants.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of an error-tolerant import. Keeps at most maxReportedRows rejected rows,
+ * all further rejections are only counted.
+ */
+public class ImportReport {
+
+    private final int errorBudget;
+    private final int maxReportedRows;
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+    private long accepted;
+    private long rejected;
+    private String abortReason;
+
+    public ImportReport(int errorBudget, int maxReportedRows) {
+        if (errorBudget < 0 || maxReportedRows < 0) {
+            throw new IllegalArgumentException("Error budget and report size cannot be negative.");
+        }
+        this.errorBudget = errorBudget;
+        this.maxReportedRows = maxReportedRows;
+    }
+
+    void accept() {
+        accepted++;
+    }
+
+    /**
+     * Records rejected row
+     * @return true if error budget is still not exceeded
+     */
+    boolean reject(long lineNumber, String line, String cause) {
+        rejected++;
+        if (rejectedRows.size() < maxReportedRows) {
+            rejectedRows.add(new RejectedRow(lineNumber, line, cause));
+        }
+        if (rejected > errorBudget) {
+            abortReason = "Error budget of " + errorBudget + " rejected rows exceeded at line " + lineNumber;
+            return false;
+        }
+        return true;
+    }
+
+    void abort(String reason) {
+        abortReason = reason;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+    public long getRejected() {
+        return rejected;
+    }
+    public List<RejectedRow> getRejectedRows() {
+        return Collections.unmodifiableList(rejectedRows);
+    }
+    public int getErrorBudget() {
+        return errorBudget;
+    }
+    public boolean isAborted() {
+        return abortReason != null;
+    }
+    public String getAbortReason() {
+        return abortReason;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport{" +
+                "accepted=" + accepted +
+                ", rejected=" + rejected +
+                ", errorBudget=" + errorBudget +
+                (abortReason != null ? ", aborted='" + abortReason + '\'' : "") +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package cz.jpcz.houseplants.service;
+
+/**
+ * Summary of a finished parallel load
+ * @param rows Number of plants loaded
+ * @param chunks Number of line-aligned chunks the file was split into
+ * @param parallelism Parallelism level of the pool that parsed the chunks
+ * @param elapsedNanos Wall-clock duration of the whole load
+ */
+public record LoadReport(int rows, int chunks, int parallelism, long elapsedNanos) {
+
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1_000_000_000d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loaded %d rows in %.1f ms (%d chunks, parallelism %d, %.0f rows/s)",
+                rows, elapsedNanos / 1_000_000d, chunks, parallelism, rowsPerSecond());
+    }
+}
@@ -0,0 +1,168 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads plant files by splitting them into line-aligned chunks, which are
+ * memory-mapped and parsed in parallel on a fork-join pool.
+ * Plants are returned in the original file order.
+ */
+public class ParallelPlantLoader {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 28;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int parallelism;
+
+    public ParallelPlantLoader(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    public ParallelPlantLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Loads all plants from file and adds them to target collection.
+     * Target is left untouched if any row fails to parse.
+     * @param file File in the format produced by PlantParser
+     * @param target Collection the plants are added to
+     * @return Report of the load
+     * @throws IOException if file can't be read
+     * @throws PlantException if any row can't be parsed
+     */
+    public LoadReport load(File file, PlantCollection target) throws IOException, PlantException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = splitIntoChunks(channel);
+            List<List<Plant>> chunks = parseChunks(channel, bounds);
+
+            int rows = 0;
+            for (List<Plant> chunk : chunks) {
+                rows += chunk.size();
+            }
+            for (List<Plant> chunk : chunks) {
+                chunk.forEach(target::addPlant);
+            }
+            return new LoadReport(rows, bounds.length - 1, parallelism, System.nanoTime() - start);
+        }
+    }
+
+    private List<List<Plant>> parseChunks(FileChannel channel, long[] bounds) throws IOException, PlantException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<List<Plant>>> tasks = new ArrayList<>(bounds.length - 1);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                tasks.add(pool.submit(() -> parseChunk(channel, from, to)));
+            }
+            List<List<Plant>> chunks = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<List<Plant>> task : tasks) {
+                chunks.add(task.get());
+            }
+            return chunks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading plants", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PlantException plantException) throw plantException;
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits file into chunks, each ending right after a line break (or at end of file)
+     * @return Chunk boundaries, first is 0 and last is file size
+     */
+    private long[] splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                Math.min(MAX_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD)));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = 0;
+        while (size - position > chunkSize) {
+            position = findLineEnd(channel, position + chunkSize);
+            if (position >= size) break;
+            bounds.add(position);
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return Position right after the first line break at or after given position
+     */
+    private static long findLineEnd(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static List<Plant> parseChunk(FileChannel channel, long from, long to) throws IOException, PlantException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(mapped);
+
+        List<Plant> plants = new ArrayList<>();
+        int length = chars.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && chars.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && chars.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            plants.add(PlantParser.deserialize(chars, lineStart, lineEnd));
+            lineStart = next;
+        }
+        return plants;
+    }
+}
@@ -0,0 +1,569 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.PlantCollectionListener;
+import cz.jpcz.houseplants.model.PlantProperty;
+import cz.jpcz.houseplants.util.DebugManager;
+import cz.jpcz.houseplants.util.parser.PlantSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes of a PlantCollection on top of a binary snapshot.
+ * <p>
+ * Every add, removal, watering, edit and sort of the collection is appended to the log as a small
+ * record. Records are written in batches by a background thread, which syncs the file once per batch
+ * (group commit). On startup the last snapshot is loaded and the log is replayed on top of it.
+ * Compaction folds the log into a new snapshot in the background, using the files only, so the
+ * collection stays available meanwhile.
+ * <pre>
+ * record - payload length (int), CRC32 of payload (int), payload
+ * payload - type (byte), plant id (long), type specific data
+ * </pre>
+ * Plant ids in the log are assigned per copy in the collection, so a plant added more than once
+ * is logged under one id for each copy and the copies are recovered as separate plants.
+ * A torn record at the end of the log (e.g. after a crash) is discarded on recovery.
+ */
+public class PlantChangeLog implements PlantCollectionListener, Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte WATER = 3;
+    private static final byte EDIT = 4;
+    private static final byte SORT = 5;
+
+    private static final long COMMIT_INTERVAL_MILLIS = 5;
+
+    private final PlantCollection collection;
+    private final Path snapshotPath;
+    private final Path nextSnapshotPath;
+    private final Path logPath;
+    private final Path compactingLogPath;
+    private final long compactionThreshold;
+
+    // Guarded by lock
+    private final Object lock = new Object();
+    // Log id of each copy by its id in the collection, and collection ids of copies of each plant
+    private final Map<Long, Long> logIds = new HashMap<>();
+    private final Map<Plant, List<Long>> collectionIds = new HashMap<>();
+    private long nextId;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedRecords;
+    private long durableRecords;
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException failure;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    // Guarded by writeLock, which is never held while waiting for lock
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+
+    private final Thread flusher;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "plant-change-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param collection Collection to recover into and log changes of, should be empty
+     * @param snapshotFile Snapshot the log is applied on, created by compaction
+     * @param logFile Log file
+     * @param compactionThreshold Log size in bytes which starts background compaction, 0 disables it
+     */
+    private PlantChangeLog(PlantCollection collection, File snapshotFile, File logFile, long compactionThreshold) {
+        this.collection = collection;
+        this.snapshotPath = snapshotFile.toPath().toAbsolutePath();
+        this.nextSnapshotPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".next");
+        this.logPath = logFile.toPath().toAbsolutePath();
+        this.compactingLogPath = logPath.resolveSibling(logPath.getFileName() + ".compacting");
+        this.compactionThreshold = compactionThreshold;
+        this.flusher = new Thread(this::flushLoop, "plant-change-log-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Recovers collection from snapshot and log and starts logging its changes
+     * @param collection Empty collection to recover into
+     * @param snapshotFile Snapshot file, doesn't need to exist
+     * @param logFile Log file, doesn't need to exist
+     * @param compactionThreshold Log size in bytes which starts background compaction, 0 disables it
+     * @return Open change log
+     * @throws IOException if files can't be read or written
+     * @throws PlantException if collection is not empty or snapshot or log contains invalid plant,
+     *                        plants recovered before the failure are removed from the collection again
+     */
+    public static PlantChangeLog open(PlantCollection collection, File snapshotFile, File logFile,
+                                      long compactionThreshold) throws IOException, PlantException {
+        if (collection.size() > 0) {
+            // Plants already in the collection would have no ids in the log, so their changes couldn't be logged
+            throw new PlantException("Change log must be opened on an empty collection, it has "
+                    + collection.size() + " plants.");
+        }
+        PlantChangeLog changeLog = new PlantChangeLog(collection, snapshotFile, logFile, compactionThreshold);
+        try {
+            changeLog.recover();
+        } catch (IOException | PlantException | RuntimeException e) {
+            changeLog.abandon();
+            throw e;
+        }
+        changeLog.flusher.start();
+        return changeLog;
+    }
+
+    /**
+     * Undoes a failed recovery, so the collection is empty again and its changes are not queued for the log
+     */
+    private void abandon() {
+        collection.removeListener(this);
+        for (Plant plant : collection.getPlants()) {
+            collection.removePlant(plant);
+        }
+        compactor.shutdownNow();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                DebugManager.printError("Change log " + logPath + " could not be closed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void recover() throws IOException, PlantException {
+        if (Files.exists(nextSnapshotPath)) {
+            // Compaction finished writing new snapshot, but did not replace the old one
+            Files.deleteIfExists(compactingLogPath);
+            Files.move(nextSnapshotPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        Map<Long, Long> targetIds = new HashMap<>();
+        loadSnapshot(collection, targetIds);
+        if (Files.exists(compactingLogPath)) {
+            replay(compactingLogPath, collection, targetIds);
+        }
+        if (Files.exists(logPath)) {
+            long validLength = replay(logPath, collection, targetIds);
+            try (FileChannel log = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                log.truncate(validLength);
+            }
+        }
+        synchronized (lock) {
+            for (Map.Entry<Long, Long> entry : targetIds.entrySet()) {
+                track(collection.getPlantById(entry.getValue()), entry.getValue(), entry.getKey());
+                nextId = Math.max(nextId, entry.getKey() + 1);
+            }
+            // Added after the replay, so recovered changes are not logged again
+            collection.addListener(this);
+        }
+
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        if (Files.exists(compactingLogPath)) {
+            compaction = CompletableFuture.runAsync(this::finishCompaction, compactor);
+        }
+    }
+
+    /**
+     * Adds plants of the snapshot to target collection
+     * @param targetIds Filled with ids of the plants in target by their log ids
+     */
+    private void loadSnapshot(PlantCollection target, Map<Long, Long> targetIds) throws IOException, PlantException {
+        if (Files.exists(snapshotPath)) {
+            PlantSnapshot.Contents contents = PlantSnapshot.readContents(snapshotPath.toFile());
+            for (int i = 0; i < contents.plants().size(); i++) {
+                long id = contents.ids() != null ? contents.ids()[i] : i;
+                targetIds.put(id, target.addPlant(contents.plants().get(i)));
+            }
+        }
+    }
+
+    /**
+     * Applies records of log file to target collection
+     * @param targetIds Ids of the plants in target by their log ids, updated by the records
+     * @return Length of the valid part of the log
+     */
+    private long replay(Path file, PlantCollection target, Map<Long, Long> targetIds)
+            throws IOException, PlantException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > 64 * 1024 * 1024) break;
+                    payload = in.readNBytes(length);
+                    crc.reset();
+                    crc.update(payload);
+                    if (payload.length != length || (int) crc.getValue() != checksum) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), target, targetIds);
+                validLength += 2 * Integer.BYTES + payload.length;
+            }
+        }
+        return validLength;
+    }
+
+    private void apply(DataInputStream record, PlantCollection target, Map<Long, Long> targetIds)
+            throws IOException, PlantException {
+        byte type = record.readByte();
+        long id = record.readLong();
+        if (type == ADD) {
+            Plant plant = new Plant(readString(record), Duration.ofDays(record.readLong()), readString(record),
+                    LocalDate.ofEpochDay(record.readLong()), LocalDate.ofEpochDay(record.readLong()));
+            targetIds.put(id, target.addPlant(plant));
+            return;
+        }
+        if (type == SORT) {
+            if (PlantProperty.values()[record.readByte()] == PlantProperty.NAME) {
+                target.sortPlantsByName();
+            } else {
+                target.sortPlantsByLastWateringDate();
+            }
+            return;
+        }
+
+        Long targetId = targetIds.get(id);
+        if (targetId == null) {
+            throw new PlantException("Change log refers to unknown plant " + id);
+        }
+        Plant plant = target.getPlantById(targetId);
+        switch (type) {
+            case REMOVE -> {
+                targetIds.remove(id);
+                target.removePlantById(targetId);
+            }
+            case WATER -> target.waterPlant(plant, LocalDate.ofEpochDay(record.readLong()));
+            case EDIT -> {
+                switch (PlantProperty.values()[record.readByte()]) {
+                    case NAME -> plant.setName(readString(record));
+                    case NOTES -> plant.setNotes(readString(record));
+                    case WATERING_INTERVAL -> plant.setWateringInterval(Duration.ofDays(record.readLong()));
+                    case PLANTED_DATE -> plant.setPlantedDate(LocalDate.ofEpochDay(record.readLong()));
+                    case LAST_WATERING_DATE -> plant.setLastWateringDate(LocalDate.ofEpochDay(record.readLong()));
+                }
+            }
+            default -> throw new PlantException("Unknown change log record type " + type);
+        }
+    }
+
+    @Override
+    public void plantAdded(Plant plant, long collectionId) {
+        synchronized (lock) {
+            long id = nextId++;
+            track(plant, collectionId, id);
+            append(ADD, id, out -> {
+                writeString(out, plant.getName());
+                out.writeLong(plant.getWateringInterval().toDays());
+                writeString(out, plant.getNotes());
+                out.writeLong(plant.getPlantedDate().toEpochDay());
+                out.writeLong(plant.getLastWateringDate().toEpochDay());
+            });
+        }
+    }
+
+    @Override
+    public void plantRemoved(Plant plant, long collectionId) {
+        synchronized (lock) {
+            Long id = logIds.remove(collectionId);
+            if (id == null) {
+                return;
+            }
+            List<Long> copies = collectionIds.get(plant);
+            copies.remove(collectionId);
+            if (copies.isEmpty()) {
+                collectionIds.remove(plant);
+            }
+            append(REMOVE, id, out -> {});
+        }
+    }
+
+    @Override
+    public void plantChanged(Plant plant, PlantProperty property, Object oldValue) {
+        synchronized (lock) {
+            List<Long> copies = collectionIds.get(plant);
+            if (copies == null) {
+                return;
+            }
+            // Copies of one plant are separate plants after recovery, so each of them gets the change
+            for (Long collectionId : copies) {
+                long id = logIds.get(collectionId);
+                if (property == PlantProperty.LAST_WATERING_DATE) {
+                    append(WATER, id, out -> out.writeLong(plant.getLastWateringDate().toEpochDay()));
+                    continue;
+                }
+                append(EDIT, id, out -> {
+                    out.writeByte(property.ordinal());
+                    switch (property) {
+                        case NAME -> writeString(out, plant.getName());
+                        case NOTES -> writeString(out, plant.getNotes());
+                        case WATERING_INTERVAL -> out.writeLong(plant.getWateringInterval().toDays());
+                        case PLANTED_DATE -> out.writeLong(plant.getPlantedDate().toEpochDay());
+                        default -> throw new IllegalStateException("Unexpected property " + property);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void plantsSorted(PlantProperty property) {
+        synchronized (lock) {
+            append(SORT, -1, out -> out.writeByte(property.ordinal()));
+        }
+    }
+
+    private void track(Plant plant, long collectionId, long id) {
+        logIds.put(collectionId, id);
+        collectionIds.computeIfAbsent(plant, p -> new ArrayList<>(1)).add(collectionId);
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, long id, RecordWriter writer) {
+        if (closed) {
+            throw new IllegalStateException("Change log is closed.");
+        }
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(type);
+            out.writeLong(id);
+            writer.write(out);
+
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            DataOutputStream pendingOut = new DataOutputStream(pending);
+            pendingOut.writeInt(bytes.length);
+            pendingOut.writeInt((int) crc.getValue());
+            pendingOut.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        appendedRecords++;
+        lock.notifyAll();
+    }
+
+    /**
+     * Blocks until all changes made so far are written and synced to disk
+     * @throws IOException if writing the log failed
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = appendedRecords;
+            syncRequested = true;
+            lock.notifyAll();
+            while (durableRecords < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for change log sync", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long batchRecords;
+            synchronized (lock) {
+                try {
+                    while (pending.size() == 0 && !closed) {
+                        lock.wait();
+                    }
+                    // Give other writers a moment to join the batch, unless somebody waits for it
+                    if (!syncRequested && !closed) {
+                        lock.wait(COMMIT_INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.size() == 0 && closed) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                batchRecords = appendedRecords;
+                pending = new ByteArrayOutputStream();
+                syncRequested = false;
+            }
+
+            try {
+                long logSize;
+                synchronized (writeLock) {
+                    writeBatch(batch);
+                    logSize = channel.size();
+                }
+                synchronized (lock) {
+                    durableRecords = Math.max(durableRecords, batchRecords);
+                    lock.notifyAll();
+                }
+                if (compactionThreshold > 0 && logSize > compactionThreshold) {
+                    compact();
+                }
+            } catch (IOException e) {
+                DebugManager.printError("Failed to write change log: " + e.getMessage());
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(byte[] batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Starts folding the log into a new snapshot in the background. Changes made meanwhile
+     * go to a fresh log file.
+     * @return Future completed when the new snapshot replaces the old one
+     */
+    public CompletableFuture<Void> compact() {
+        synchronized (lock) {
+            if (!compaction.isDone() || closed) {
+                return compaction;
+            }
+            try {
+                // Batches still pending go to the new log, which is replayed after the rotated one
+                synchronized (writeLock) {
+                    channel.close();
+                    Files.move(logPath, compactingLogPath, StandardCopyOption.ATOMIC_MOVE);
+                    channel = FileChannel.open(logPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+            } catch (IOException e) {
+                failure = e;
+                lock.notifyAll();
+                return CompletableFuture.failedFuture(e);
+            }
+            compaction = CompletableFuture.runAsync(this::finishCompaction, compactor);
+            return compaction;
+        }
+    }
+
+    /**
+     * Replays snapshot and rotated log into a scratch collection and writes it as the new snapshot
+     */
+    private void finishCompaction() {
+        try {
+            PlantCollection scratch = new PlantCollection();
+            Map<Long, Long> scratchIds = new HashMap<>();
+            loadSnapshot(scratch, scratchIds);
+            replay(compactingLogPath, scratch, scratchIds);
+
+            Map<Long, Long> idsInScratch = new HashMap<>();
+            scratchIds.forEach((id, scratchId) -> idsInScratch.put(scratchId, id));
+            // Every plant of scratch is a separate object, so its id in scratch is the id of its only copy
+            List<Plant> plants = scratch.getPlants();
+            long[] snapshotIds = new long[plants.size()];
+            for (int i = 0; i < plants.size(); i++) {
+                snapshotIds[i] = idsInScratch.get(scratch.getPlantId(plants.get(i)));
+            }
+            PlantSnapshot.write(plants, snapshotIds, nextSnapshotPath.toFile());
+            Files.deleteIfExists(compactingLogPath);
+            Files.move(nextSnapshotPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (PlantException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Size of the current log file in bytes
+     */
+    public long getLogSize() throws IOException {
+        synchronized (writeLock) {
+            return channel.size();
+        }
+    }
+
+    /**
+     * Syncs pending changes, waits for running compaction and stops logging
+     */
+    @Override
+    public void close() throws IOException {
+        sync();
+        CompletableFuture<Void> running;
+        synchronized (lock) {
+            closed = true;
+            running = compaction;
+            lock.notifyAll();
+        }
+        collection.removeListener(this);
+        try {
+            flusher.join();
+            running.exceptionally(e -> null).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        synchronized (writeLock) {
+            channel.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,19 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.model.Plant;
+
+/**
+ * Difference of one plant between two inventory files
+ * @param type Kind of the difference
+ * @param before Plant in the older file, null if it was added
+ * @param after Plant in the newer file, null if it was removed
+ */
+public record PlantDifference(Type type, Plant before, Plant after) {
+
+    public enum Type {
+        ADDED,
+        REMOVED,
+        /** Plant with the same name has different notes, watering interval or dates */
+        CHANGED
+    }
+}
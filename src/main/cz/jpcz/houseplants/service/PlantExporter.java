@@ -0,0 +1,133 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.util.AtomicFiles;
+import cz.jpcz.houseplants.util.parser.PlantEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes plants in the PlantParser format using PlantEncoder.
+ * <p>
+ * Files are written to a temporary file, synced and then atomically renamed to the target,
+ * so the target is either the old or the complete new file, with permissions of the old file. Asynchronous exports copy values
+ * of all plants first, then encode and write them on a background writer thread.
+ */
+public class PlantExporter {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "plant-exporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Values of a plant at the time the snapshot was taken
+     */
+    private record Row(String name, String notes, long wateringIntervalDays, LocalDate lastWateringDate,
+                       LocalDate plantedDate) {}
+
+    private PlantExporter() {}
+
+    /**
+     * Writes plants to file on the calling thread
+     * @return Report of the export
+     * @throws IOException if file can't be written
+     */
+    public static ExportReport write(Iterable<Plant> plants, File file, ExportCompression compression) throws IOException {
+        long start = System.nanoTime();
+        int[] count = {0};
+        writeAtomically(file, compression, encoder -> {
+            for (Plant plant : plants) {
+                encoder.encode(plant);
+                count[0]++;
+            }
+        });
+        return new ExportReport(file, count[0], file.length(), System.nanoTime() - start);
+    }
+
+    /**
+     * Takes a snapshot of plant values on the calling thread and writes it in the background.
+     * Changes of plants made after this method returns are not included.
+     * @return Future completed with report of the export, or exceptionally if writing failed
+     */
+    public static CompletableFuture<ExportReport> writeAsync(Collection<Plant> plants, File file,
+                                                             ExportCompression compression) {
+        List<Row> rows = new ArrayList<>(plants.size());
+        for (Plant plant : plants) {
+            rows.add(new Row(plant.getName(), plant.getNotes(), plant.getWateringInterval().toDays(),
+                    plant.getLastWateringDate(), plant.getPlantedDate()));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                writeAtomically(file, compression, encoder -> {
+                    for (Row row : rows) {
+                        encoder.encode(row.name(), row.notes(), row.wateringIntervalDays(),
+                                row.lastWateringDate(), row.plantedDate());
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new ExportReport(file, rows.size(), file.length(), System.nanoTime() - start);
+        }, WRITER);
+    }
+
+    private interface EncodingTask {
+        void encode(PlantEncoder encoder) throws IOException;
+    }
+
+    private static void writeAtomically(File file, ExportCompression compression, EncodingTask task) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = AtomicFiles.createTempFile(target);
+        try {
+            try (FileOutputStream fileOutput = new FileOutputStream(temp.toFile())) {
+                OutputStream output = compressed(new BufferedOutputStream(fileOutput, OUTPUT_BUFFER_SIZE), compression);
+                PlantEncoder encoder = new PlantEncoder(output);
+                task.encode(encoder);
+                encoder.flush();
+                if (output instanceof GZIPOutputStream gzip) {
+                    gzip.finish();
+                }
+                output.flush();
+                fileOutput.getFD().sync();
+                output.close();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static OutputStream compressed(OutputStream output, ExportCompression compression) throws IOException {
+        return switch (compression) {
+            case NONE -> output;
+            case GZIP -> new GZIPOutputStream(output, OUTPUT_BUFFER_SIZE);
+            case GZIP_FAST -> new GZIPOutputStream(output, OUTPUT_BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        };
+    }
+}
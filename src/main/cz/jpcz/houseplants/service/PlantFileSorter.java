@@ -0,0 +1,359 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.util.parser.PlantEncoder;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sorts and compares plant files in the PlantParser format which don't have to fit in memory.
+ * <p>
+ * Sorting reads at most runSize plants at a time, sorts them and writes them to a temporary run file.
+ * Runs are then merged by k-way merge, at most MERGE_FAN_IN of them at once, so memory use is bounded
+ * by the run size and the number of open runs, not by the size of the file. Sorting is stable.
+ * <p>
+ * Comparing streams two files sorted by {@link #DIFF_ORDER} side by side and merge-joins them on name
+ * and row. Plants with equal rows are unchanged, the remaining plants of one name are paired as changed
+ * in row order. Only plants of the current name still waiting for a pair are held in memory.
+ */
+public class PlantFileSorter {
+
+    public static final int DEFAULT_RUN_SIZE = 100_000;
+    /**
+     * Order of files compared by diffSorted, by name and then by the whole row
+     */
+    public static final Comparator<Plant> DIFF_ORDER =
+            Comparator.comparing(Plant::getName).thenComparing(PlantParser::serialize);
+    static final int MERGE_FAN_IN = 64;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final int runSize;
+    private final File tempDirectory;
+
+    /**
+     * @param runSize Maximum number of plants held in memory
+     * @param tempDirectory Directory of run files, null for the default temporary directory
+     */
+    public PlantFileSorter(int runSize, File tempDirectory) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive: " + runSize);
+        }
+        this.runSize = runSize;
+        this.tempDirectory = tempDirectory;
+    }
+    public PlantFileSorter() {
+        this(DEFAULT_RUN_SIZE, null);
+    }
+
+    /**
+     * Sorts plants of input file into output file, which is replaced atomically once it is complete
+     * @param order Order of plants, plants equal by it keep the order of the input
+     * @return Report of the sort
+     * @throws PlantException if input contains invalid row
+     */
+    public SortReport sort(File input, File output, Comparator<Plant> order) throws IOException, PlantException {
+        long start = System.nanoTime();
+        List<File> runs = new ArrayList<>();
+        try {
+            List<Plant> run = new ArrayList<>(Math.min(runSize, 1024));
+            long plants = 0;
+            try (PlantReader reader = new PlantReader(input, null)) {
+                for (Plant plant = reader.next(); plant != null; plant = reader.next()) {
+                    run.add(plant);
+                    plants++;
+                    if (run.size() == runSize) {
+                        runs.add(writeRun(run, order));
+                        run.clear();
+                    }
+                }
+            }
+            if (runs.isEmpty()) {
+                // Everything fits in one run, it is written straight to the output
+                run.sort(order);
+                PlantExporter.write(run, output, ExportCompression.NONE);
+                return new SortReport(output, plants, 1, System.nanoTime() - start);
+            }
+            if (!run.isEmpty()) {
+                runs.add(writeRun(run, order));
+            }
+            int runCount = runs.size();
+            while (runs.size() > MERGE_FAN_IN) {
+                runs = mergePass(runs, order);
+            }
+            try (Merge merge = new Merge(runs, order)) {
+                PlantExporter.write(() -> merge, output, ExportCompression.NONE);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new SortReport(output, plants, runCount, System.nanoTime() - start);
+        } finally {
+            for (File file : runs) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Compares two files sorted by {@link #DIFF_ORDER}, see {@link PlantService#diffFiles} for files in any order.
+     * Differences are passed to consumer as they are found, in order of names.
+     * @param before Older file
+     * @param after Newer file
+     * @return Counts of differences
+     * @throws PlantException if a file contains invalid row or is not sorted by DIFF_ORDER
+     */
+    public DiffReport diffSorted(File before, File after, Consumer<PlantDifference> consumer)
+            throws IOException, PlantException {
+        long[] counts = new long[4];
+        // Plants of the current name without an equal row on the other side, only one of them is non-empty
+        Deque<Plant> unmatchedOld = new ArrayDeque<>();
+        Deque<Plant> unmatchedNew = new ArrayDeque<>();
+        String name = null;
+        try (PlantReader older = new PlantReader(before, DIFF_ORDER);
+             PlantReader newer = new PlantReader(after, DIFF_ORDER)) {
+            Plant oldPlant = older.next();
+            Plant newPlant = newer.next();
+            String oldRow = oldPlant == null ? null : PlantParser.serialize(oldPlant);
+            String newRow = newPlant == null ? null : PlantParser.serialize(newPlant);
+            while (oldPlant != null || newPlant != null) {
+                int comparison = oldPlant == null ? 1 : newPlant == null ? -1
+                        : oldPlant.getName().compareTo(newPlant.getName());
+                if (comparison == 0) {
+                    comparison = oldRow.compareTo(newRow);
+                }
+                String nextName = (comparison <= 0 ? oldPlant : newPlant).getName();
+                if (!nextName.equals(name)) {
+                    reportUnmatched(unmatchedOld, unmatchedNew, consumer, counts);
+                    name = nextName;
+                }
+                if (comparison == 0) {
+                    counts[3]++;
+                } else if (comparison < 0) {
+                    if (unmatchedNew.isEmpty()) {
+                        unmatchedOld.add(oldPlant);
+                    } else {
+                        report(new PlantDifference(PlantDifference.Type.CHANGED, oldPlant, unmatchedNew.poll()),
+                                consumer, counts);
+                    }
+                } else {
+                    if (unmatchedOld.isEmpty()) {
+                        unmatchedNew.add(newPlant);
+                    } else {
+                        report(new PlantDifference(PlantDifference.Type.CHANGED, unmatchedOld.poll(), newPlant),
+                                consumer, counts);
+                    }
+                }
+                if (comparison <= 0) {
+                    oldPlant = older.next();
+                    oldRow = oldPlant == null ? null : PlantParser.serialize(oldPlant);
+                }
+                if (comparison >= 0) {
+                    newPlant = newer.next();
+                    newRow = newPlant == null ? null : PlantParser.serialize(newPlant);
+                }
+            }
+            reportUnmatched(unmatchedOld, unmatchedNew, consumer, counts);
+        }
+        return new DiffReport(counts[0], counts[1], counts[2], counts[3]);
+    }
+
+    /**
+     * Reports plants of a name left without pair as removed or added
+     */
+    private static void reportUnmatched(Deque<Plant> unmatchedOld, Deque<Plant> unmatchedNew,
+                                        Consumer<PlantDifference> consumer, long[] counts) {
+        for (Plant plant = unmatchedOld.poll(); plant != null; plant = unmatchedOld.poll()) {
+            report(new PlantDifference(PlantDifference.Type.REMOVED, plant, null), consumer, counts);
+        }
+        for (Plant plant = unmatchedNew.poll(); plant != null; plant = unmatchedNew.poll()) {
+            report(new PlantDifference(PlantDifference.Type.ADDED, null, plant), consumer, counts);
+        }
+    }
+
+    private static void report(PlantDifference difference, Consumer<PlantDifference> consumer, long[] counts) {
+        counts[difference.type().ordinal()]++;
+        consumer.accept(difference);
+    }
+
+    private File writeRun(List<Plant> run, Comparator<Plant> order) throws IOException {
+        run.sort(order);
+        File file = createRunFile();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE)) {
+            PlantEncoder encoder = new PlantEncoder(output);
+            for (Plant plant : run) {
+                encoder.encode(plant);
+            }
+            encoder.flush();
+        }
+        return file;
+    }
+
+    /**
+     * Merges runs in groups of MERGE_FAN_IN into fewer longer runs and deletes the merged runs
+     */
+    private List<File> mergePass(List<File> runs, Comparator<Plant> order) throws IOException, PlantException {
+        List<File> merged = new ArrayList<>();
+        try {
+            for (int from = 0; from < runs.size(); from += MERGE_FAN_IN) {
+                List<File> group = runs.subList(from, Math.min(from + MERGE_FAN_IN, runs.size()));
+                File file = createRunFile();
+                merged.add(file);
+                try (Merge merge = new Merge(group, order);
+                     OutputStream output = new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE)) {
+                    PlantEncoder encoder = new PlantEncoder(output);
+                    while (merge.hasNext()) {
+                        encoder.encode(merge.next());
+                    }
+                    encoder.flush();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        } catch (IOException | PlantException e) {
+            for (File file : merged) {
+                Files.deleteIfExists(file.toPath());
+            }
+            throw e;
+        }
+        for (File file : runs) {
+            Files.deleteIfExists(file.toPath());
+        }
+        return merged;
+    }
+
+    private File createRunFile() throws IOException {
+        return tempDirectory != null
+                ? Files.createTempFile(tempDirectory.toPath(), "plants-run", ".txt").toFile()
+                : Files.createTempFile("plants-run", ".txt").toFile();
+    }
+
+    /**
+     * Reads plants row by row, optionally checking the file is sorted
+     */
+    private static final class PlantReader implements Closeable {
+
+        private final File file;
+        private final BufferedReader reader;
+        private final Comparator<Plant> expectedOrder;
+        private Plant previous;
+        private long lineNumber;
+
+        /**
+         * @param expectedOrder Order rows have to follow, null if not checked
+         */
+        PlantReader(File file, Comparator<Plant> expectedOrder) throws IOException {
+            this.file = file;
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8),
+                    IO_BUFFER_SIZE);
+            this.expectedOrder = expectedOrder;
+        }
+
+        /**
+         * @return Next plant, null at the end of file
+         */
+        Plant next() throws IOException, PlantException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            Plant plant;
+            try {
+                plant = PlantParser.deserialize(line);
+            } catch (PlantException e) {
+                throw new PlantException("Invalid row " + lineNumber + " of " + file + ": " + e.getMessage());
+            }
+            if (expectedOrder != null && previous != null && expectedOrder.compare(previous, plant) > 0) {
+                throw new PlantException("File " + file + " is not sorted at row " + lineNumber);
+            }
+            previous = plant;
+            return plant;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs, plants equal by order are taken from the earlier run first
+     */
+    private static final class Merge implements Iterator<Plant>, Closeable {
+
+        private record Head(Plant plant, int run) {}
+
+        private final List<PlantReader> readers = new ArrayList<>();
+        private final PriorityQueue<Head> heads;
+
+        Merge(List<File> runs, Comparator<Plant> order) throws IOException, PlantException {
+            heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                    Comparator.comparing(Head::plant, order).thenComparingInt(Head::run));
+            try {
+                for (File run : runs) {
+                    PlantReader reader = new PlantReader(run, null);
+                    readers.add(reader);
+                    Plant plant = reader.next();
+                    if (plant != null) {
+                        heads.add(new Head(plant, readers.size() - 1));
+                    }
+                }
+            } catch (IOException | PlantException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Plant next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Plant plant = readers.get(head.run()).next();
+                if (plant != null) {
+                    heads.add(new Head(plant, head.run()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (PlantException e) {
+                throw new IllegalStateException("Run file is corrupted: " + e.getMessage(), e);
+            }
+            return head.plant();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (PlantReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+}
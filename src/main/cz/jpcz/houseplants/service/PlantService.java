@@ -1,25 +1,58 @@
 package cz.jpcz.houseplants.service;
 
 import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.metrics.PlantMetrics;
+import cz.jpcz.houseplants.metrics.ServiceOperation;
 import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantChange;
+import cz.jpcz.houseplants.model.PlantChangeFeed;
 import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.PlantOrder;
+import cz.jpcz.houseplants.model.PlantQuery;
+import cz.jpcz.houseplants.model.WateringEvent;
+import cz.jpcz.houseplants.model.WateringOutcome;
 import cz.jpcz.houseplants.util.ConsoleColor;
 import cz.jpcz.houseplants.util.DebugManager;
 import cz.jpcz.houseplants.util.parser.PlantParser;
+import cz.jpcz.houseplants.util.parser.PlantSnapshot;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Service class for managing plants
  */
 public class PlantService {
 
+    /**
+     * Upper bound of rejected rows kept in an ImportReport
+     */
+    private static final int MAX_REPORTED_ROWS = 1000;
+
     private final PlantCollection plantCollection;
+    private final Clock clock;
+    private volatile LoadReport lastLoadReport;
+    private PlantChangeLog changeLog;
+    private final PlantMetrics metrics;
 
-    public PlantService(PlantCollection plantCollection) {
+    /**
+     * @param plantCollection Collection managed by this service
+     * @param clock Clock the current date of watering operations is taken from
+     */
+    public PlantService(PlantCollection plantCollection, Clock clock) {
         this.plantCollection = plantCollection;
+        this.clock = clock;
+        this.metrics = new PlantMetrics(plantCollection::size);
+    }
+    public PlantService(PlantCollection plantCollection) {
+        this(plantCollection, Clock.systemDefaultZone());
     }
     public PlantService() {
         this(new PlantCollection());
@@ -29,19 +62,121 @@ public class PlantService {
         return loadFromFile(new File(path));
     }
     public PlantCollection loadFromFile(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        long start = metrics.startTimer();
+        long rows = 0;
+        try (BufferedReader reader = openReader(file)) {
             String line;
             while ((line = reader.readLine()) != null) {
+                long parseStart = metrics.startSampledTimer(rows++);
                 Plant plant = PlantParser.deserialize(line);
+                metrics.record(ServiceOperation.DESERIALIZE, parseStart);
                 plantCollection.addPlant(plant);
             }
             DebugManager.print(ConsoleColor.BLUE + "Plants loaded from file " + file);
             return plantCollection;
         } catch (IOException | PlantException e) {
+            if (e instanceof PlantException) {
+                rows--;
+                metrics.addRejected(1);
+            }
             DebugManager.printError("Exception thrown: " + e.getMessage());
             return new PlantCollection();
+        } finally {
+            metrics.addLoaded(rows);
+            metrics.record(ServiceOperation.LOAD_FROM_FILE, start);
+        }
+    }
+
+    /**
+     * Loads plants from file using multiple threads, keeping original file order.
+     * Compressed files can't be split into chunks, they are loaded by loadFromFile.
+     * @param file File to load
+     * @param parallelism Number of threads parsing the file
+     * @return Collection of this service, or empty collection if loading failed
+     */
+    public PlantCollection loadFromFileParallel(File file, int parallelism) {
+        long start = metrics.startTimer();
+        try {
+            lastLoadReport = new ParallelPlantLoader(parallelism).load(file, plantCollection);
+            metrics.addLoaded(lastLoadReport.rows());
+            DebugManager.print(ConsoleColor.BLUE + "Plants loaded from file " + file + ": " + lastLoadReport);
+            return plantCollection;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return new PlantCollection();
+        } finally {
+            metrics.record(ServiceOperation.LOAD_FROM_FILE_PARALLEL, start);
+        }
+    }
+    public PlantCollection loadFromFileParallel(String path, int parallelism) {
+        return loadFromFileParallel(new File(path), parallelism);
+    }
+    public LoadReport getLastLoadReport() {
+        return lastLoadReport;
+    }
+
+    /**
+     * Imports plants from file, skipping rows that can't be parsed.
+     * Valid rows read before the import stops stay in the collection.
+     * @param file File to import
+     * @param errorBudget Number of rejected rows tolerated before the import stops
+     * @return Report with accepted count and rejected rows
+     */
+    public ImportReport importFromFile(File file, int errorBudget) {
+        long start = metrics.startTimer();
+        ImportReport report = new ImportReport(errorBudget, (int) Math.min(errorBudget + 1L, MAX_REPORTED_ROWS));
+        try (BufferedReader reader = openReader(file)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                try {
+                    long parseStart = metrics.startSampledTimer(lineNumber);
+                    Plant plant = PlantParser.deserialize(line);
+                    metrics.record(ServiceOperation.DESERIALIZE, parseStart);
+                    plantCollection.addPlant(plant);
+                    report.accept();
+                } catch (PlantException e) {
+                    DebugManager.print(ConsoleColor.RED + "Rejected line " + lineNumber + ": " + e.getMessage());
+                    if (!report.reject(lineNumber, line, e.getMessage())) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            report.abort(e.getMessage());
         }
+        metrics.addLoaded(report.getAccepted());
+        metrics.addRejected(report.getRejected());
+        metrics.record(ServiceOperation.IMPORT_FROM_FILE, start);
+        DebugManager.print(ConsoleColor.BLUE + "Plants imported from file " + file + ": " + report);
+        return report;
+    }
+    public ImportReport importFromFile(String path, int errorBudget) {
+        return importFromFile(new File(path), errorBudget);
     }
+
+    /**
+     * Opens plant file for reading lines, a file saved with compression is recognized by the gzip
+     * magic number at its start and decompressed
+     */
+    private static BufferedReader openReader(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            input.mark(2);
+            int magic = input.read() | input.read() << 8;
+            input.reset();
+            if (magic == GZIPInputStream.GZIP_MAGIC) {
+                input = new GZIPInputStream(input);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(input));
+    }
+
     public void saveToFile(String path) {
         if (!new File(path).exists()) {
             DebugManager.print(ConsoleColor.BLUE + "File " + path + " does not exist. Creating new file.");
@@ -49,19 +184,215 @@ public class PlantService {
         saveToFile(new File(path));
     }
     public void saveToFile(File file) {
-        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
-            for (Plant plant : plantCollection.getPlants()) {
-                writer.println(PlantParser.serialize(plant));
-            }
-            DebugManager.print(ConsoleColor.BLUE + "Plants(" + plantCollection.getPlants().size() + ") saved to file " + file);
+        saveToFile(file, ExportCompression.NONE);
+    }
+    /**
+     * Saves plants to file, which is replaced atomically once it is completely written.
+     * Compressed files are read back by loadFromFile and importFromFile.
+     * @param file Target file
+     * @param compression Compression of the file
+     */
+    public void saveToFile(File file, ExportCompression compression) {
+        long start = metrics.startTimer();
+        try {
+            ExportReport report = PlantExporter.write(plantCollection.stream()::iterator, file, compression);
+            metrics.addSaved(report.plants());
+            DebugManager.print(ConsoleColor.BLUE + "Plants(" + report.plants() + ") saved to file " + file);
+        } catch (IOException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+        } finally {
+            metrics.record(ServiceOperation.SAVE_TO_FILE, start);
+        }
+    }
+
+    /**
+     * Exports plants in the background. Plant values are copied before this method returns,
+     * so later changes don't affect the export.
+     * @param file Target file, replaced atomically once it is completely written
+     * @param compression Compression of the file
+     * @return Future completed with report of the export, or exceptionally if writing failed
+     */
+    public CompletableFuture<ExportReport> exportAsync(File file, ExportCompression compression) {
+        return PlantExporter.writeAsync(plantCollection.getPlants(), file, compression)
+                .whenComplete((report, e) -> {
+                    if (e != null) {
+                        DebugManager.printError("Exception thrown: " + e.getMessage());
+                    } else {
+                        metrics.addSaved(report.plants());
+                        DebugManager.print(ConsoleColor.BLUE + report.toString());
+                    }
+                });
+    }
+
+    /**
+     * Sorts plant file which doesn't have to fit in memory, plants of this service are not affected
+     * @param input File in the PlantParser format
+     * @param output Sorted file, replaced atomically once it is complete
+     * @param order Order of plants, plants equal by it keep the order of the input
+     * @return Report of the sort, or null if sorting failed
+     */
+    public SortReport sortFile(File input, File output, PlantOrder order) {
+        try {
+            SortReport report = new PlantFileSorter().sort(input, output, order.comparator());
+            DebugManager.print(ConsoleColor.BLUE + report.toString());
+            return report;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compares two plant files, e.g. yesterday's and today's inventory, which don't have to fit in memory.
+     * Both files are sorted by name and row first, plants are matched by name.
+     * @param before Older file
+     * @param after Newer file
+     * @param consumer Receives differences in order of names as they are found
+     * @return Counts of differences, or null if comparing failed
+     */
+    public DiffReport diffFiles(File before, File after, Consumer<PlantDifference> consumer) {
+        PlantFileSorter sorter = new PlantFileSorter();
+        File sortedBefore = null;
+        File sortedAfter = null;
+        try {
+            sortedBefore = File.createTempFile("plants-before", ".txt");
+            sortedAfter = File.createTempFile("plants-after", ".txt");
+            sorter.sort(before, sortedBefore, PlantFileSorter.DIFF_ORDER);
+            sorter.sort(after, sortedAfter, PlantFileSorter.DIFF_ORDER);
+            DiffReport report = sorter.diffSorted(sortedBefore, sortedAfter, consumer);
+            DebugManager.print(ConsoleColor.BLUE + "Compared " + before + " with " + after + ": " + report);
+            return report;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return null;
+        } finally {
+            if (sortedBefore != null) sortedBefore.delete();
+            if (sortedAfter != null) sortedAfter.delete();
+        }
+    }
+
+    /**
+     * Loads plants from binary snapshot created by saveSnapshot
+     * @param file Snapshot file
+     * @return Collection of this service, or empty collection if loading failed
+     */
+    public PlantCollection loadSnapshot(File file) {
+        long start = metrics.startTimer();
+        try {
+            List<Plant> plants = PlantSnapshot.read(file);
+            plants.forEach(plantCollection::addPlant);
+            metrics.addLoaded(plants.size());
+            DebugManager.print(ConsoleColor.BLUE + "Plants(" + plants.size() + ") loaded from snapshot " + file);
+            return plantCollection;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return new PlantCollection();
+        } finally {
+            metrics.record(ServiceOperation.LOAD_SNAPSHOT, start);
+        }
+    }
+    public PlantCollection loadSnapshot(String path) {
+        return loadSnapshot(new File(path));
+    }
+    /**
+     * @return true if the snapshot was written
+     */
+    public boolean saveSnapshot(File file) {
+        long start = metrics.startTimer();
+        try {
+            List<Plant> plants = plantCollection.getPlants();
+            PlantSnapshot.write(plants, file);
+            metrics.addSaved(plants.size());
+            DebugManager.print(ConsoleColor.BLUE + "Plants(" + plants.size() + ") saved to snapshot " + file);
+            return true;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return false;
+        } finally {
+            metrics.record(ServiceOperation.SAVE_SNAPSHOT, start);
+        }
+    }
+    public boolean saveSnapshot(String path) {
+        return saveSnapshot(new File(path));
+    }
+
+    /**
+     * Converts text file in PlantParser format to binary snapshot
+     */
+    public static void convertToSnapshot(File textFile, File snapshotFile) {
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile(textFile);
+        plantService.saveSnapshot(snapshotFile);
+    }
+    /**
+     * Converts binary snapshot to text file in PlantParser format
+     */
+    public static void convertFromSnapshot(File snapshotFile, File textFile) {
+        PlantService plantService = new PlantService();
+        plantService.loadSnapshot(snapshotFile);
+        plantService.saveToFile(textFile);
+    }
+
+    /**
+     * Recovers plants from snapshot and change log and keeps logging changes of the collection,
+     * so they survive restart without saving the whole file. The collection of this service must be
+     * empty, plants loaded before would not be in the log.
+     * @param snapshotFile Snapshot the log is applied on
+     * @param logFile Change log file
+     * @param compactionThreshold Log size in bytes which starts background compaction, 0 disables it
+     * @return Collection of this service, or empty collection if recovery failed
+     */
+    public PlantCollection openChangeLog(File snapshotFile, File logFile, long compactionThreshold) {
+        try {
+            closeChangeLog();
+            changeLog = PlantChangeLog.open(plantCollection, snapshotFile, logFile, compactionThreshold);
+            DebugManager.print(ConsoleColor.BLUE + "Plants(" + plantCollection.size() + ") recovered from change log " + logFile);
+            return plantCollection;
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+            return new PlantCollection();
+        }
+    }
+    /**
+     * Blocks until all changes are durably written to the change log
+     */
+    public void syncChangeLog() {
+        if (changeLog == null) return;
+        try {
+            changeLog.sync();
+        } catch (IOException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+        }
+    }
+    /**
+     * Folds the change log into its snapshot and waits for it to finish
+     */
+    public void compactChangeLog() {
+        if (changeLog == null) return;
+        try {
+            changeLog.compact().join();
+            DebugManager.print(ConsoleColor.BLUE + "Change log compacted");
+        } catch (RuntimeException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+        }
+    }
+    public void closeChangeLog() {
+        if (changeLog == null) return;
+        try {
+            changeLog.close();
         } catch (IOException e) {
             DebugManager.printError("Exception thrown: " + e.getMessage());
+        } finally {
+            changeLog = null;
         }
     }
 
-    public void addPlant(Plant plant) throws PlantException {
+    /**
+     * @return Stable id of the plant in the collection
+     */
+    public long addPlant(Plant plant) throws PlantException {
         if (plant == null) throw new PlantException("Plant cannot be null.");
-        plantCollection.addPlant(plant);
+        return plantCollection.addPlant(plant);
     }
     public void removePlant(Plant plant) throws PlantException {
         if (plant == null) throw new PlantException("Plant cannot be null.");
@@ -70,24 +401,128 @@ public class PlantService {
     public void removePlant(int index) throws PlantException {
         plantCollection.removePlant(index);
     }
+    public void removePlantById(long id) throws PlantException {
+        if (!plantCollection.removePlantById(id)) throw new PlantException("Plant with id " + id + " not found.");
+    }
+
+    public void waterPlant(Plant plant, LocalDate date) throws PlantException {
+        if (plant == null) throw new PlantException("Plant cannot be null.");
+        plantCollection.waterPlant(plant, date);
+    }
+    public void waterPlant(Plant plant) throws PlantException {
+        waterPlant(plant, getToday());
+    }
+
+    /**
+     * Applies batch of waterings, e.g. reported by irrigation controllers, in one pass
+     * @param events Waterings to apply
+     * @return Outcome of every event, in order of events
+     * @see PlantCollection#waterPlants(List)
+     */
+    public List<WateringOutcome> waterPlants(List<WateringEvent> events) throws PlantException {
+        if (events == null) throw new PlantException("Watering events cannot be null.");
+        long start = metrics.startTimer();
+        List<WateringOutcome> outcomes = plantCollection.waterPlants(events);
+        metrics.record(ServiceOperation.WATER_PLANTS, start);
+        return outcomes;
+    }
 
     public Plant getPlant(int index) {
         return plantCollection.getPlant(index);
     }
+    public Plant getPlantById(long id) throws PlantException {
+        Plant plant = plantCollection.getPlantById(id);
+        if (plant == null) throw new PlantException("Plant with id " + id + " not found.");
+        return plant;
+    }
     public List<Plant> getPlants() {
         return plantCollection.getPlants();
     }
     public PlantCollection getPlantCollection() {
         return plantCollection;
     }
+    /**
+     * @return Metrics of operations of this service
+     */
+    public PlantMetrics getMetrics() {
+        return metrics;
+    }
+    /**
+     * @return Feed of added, removed, watered and edited plants of this service
+     */
+    public PlantChangeFeed getChangeFeed() {
+        return plantCollection.getChangeFeed();
+    }
+    /**
+     * Subscribes to changes of plants, e.g. to keep a cache up to date without copying all plants
+     * @param subscriber Subscriber receiving changes as it requests them
+     * @param afterSequence Sequence number of the last change the subscriber already processed
+     * @see PlantChangeFeed#subscribe(Flow.Subscriber, long)
+     */
+    public void subscribeToChanges(Flow.Subscriber<? super PlantChange> subscriber, long afterSequence) {
+        plantCollection.getChangeFeed().subscribe(subscriber, afterSequence);
+    }
+    /**
+     * @return New lazy query over plants of this service
+     */
+    public PlantQuery queryPlants() {
+        return plantCollection.query();
+    }
 
+    /**
+     * @return Current date according to the clock of this service
+     */
+    public LocalDate getToday() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * @return Plants needing watering today, most overdue first
+     */
     public List<Plant> getUnWateredPlants() {
-        List<Plant> unWateredPlants = new ArrayList<>();
-        for (Plant plant : plantCollection.getPlants()) {
-            if (plant.isWateringNeeded()) {
-                unWateredPlants.add(plant);
-            }
-        }
-        return unWateredPlants;
+        return getUnWateredPlants(getToday());
+    }
+    /**
+     * @param asOf Date the watering need is evaluated for
+     * @return Plants needing watering as of given date, most overdue first
+     */
+    public List<Plant> getUnWateredPlants(LocalDate asOf) {
+        long start = metrics.startTimer();
+        List<Plant> plants = plantCollection.getPlantsToWater(asOf);
+        metrics.record(ServiceOperation.GET_UNWATERED_PLANTS, start);
+        return plants;
+    }
+
+    /**
+     * @param days Number of days from today
+     * @return Plants due for watering within given number of days, ordered by next watering date
+     */
+    public List<Plant> getPlantsDueWithin(int days) {
+        return plantCollection.getPlantsDueWithin(getToday(), days);
+    }
+
+    /**
+     * Forecasts daily watering load of the whole collection, assuming plants are watered when due
+     * @param from First day of the forecast
+     * @param days Number of days of the forecast
+     * @return Lazily computed days of the forecast in date order
+     */
+    public Stream<WateringDay> forecastWatering(LocalDate from, int days) {
+        return new WateringForecaster(plantCollection.getPlants(), from, days).days();
+    }
+    public Stream<WateringDay> forecastWatering(int days) {
+        return forecastWatering(getToday(), days);
+    }
+
+    /**
+     * Watering information of all plants, evaluated for the same date
+     * @param asOf Date the information is evaluated for
+     * @return Watering information in collection order
+     */
+    public List<String> getWateringReport(LocalDate asOf) {
+        return plantCollection.stream().map(plant -> plant.getWateringInfo(asOf)).toList();
+    }
+    public List<String> getWateringReport() {
+        return getWateringReport(getToday());
     }
 }
@@ -0,0 +1,15 @@
+package cz.jpcz.houseplants.service;
+
+/**
+ * Row of an imported file that could not be parsed
+ * @param lineNumber 1-based line number in the file
+ * @param line Content of the line
+ * @param cause Reason of rejection
+ */
+public record RejectedRow(long lineNumber, String line, String cause) {
+
+    @Override
+    public String toString() {
+        return "Line " + lineNumber + ": " + cause;
+    }
+}
@@ -0,0 +1,430 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.PlantCollectionListener;
+import cz.jpcz.houseplants.model.PlantMerge;
+import cz.jpcz.houseplants.model.WateringEvent;
+import cz.jpcz.houseplants.model.WateringOutcome;
+import cz.jpcz.houseplants.util.ConsoleColor;
+import cz.jpcz.houseplants.util.DebugManager;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+import cz.jpcz.houseplants.util.parser.PlantSnapshot;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Service partitioning plants into several shards, each of them a PlantService with its own collection.
+ * <p>
+ * A plant belongs to the shard chosen by the hash of its shard key, e.g. its name or a site prefix of it.
+ * Queries run on all shards in parallel and their results are gathered, ordered results are combined
+ * by k-way merge. Each shard can be persisted to its own snapshot, so shards load in parallel.
+ * Shard keys should not change while plants are in the service, a plant whose key changed stays
+ * in its original shard. The shard of every plant is recorded when it is added to a shard collection,
+ * so such a plant is still found without searching all shards.
+ */
+public class ShardedPlantService implements Closeable {
+
+    private static final String SHARD_FILE_PREFIX = "shard-";
+    private static final String SHARD_FILE_SUFFIX = ".snapshot";
+
+    private final PlantService[] shards;
+    // Index of shard each plant was added to, kept by a ShardTracker of every shard collection
+    private final Map<Plant, Integer> shardByPlant = new ConcurrentHashMap<>();
+    private final Function<Plant, String> shardKey;
+    private final Clock clock;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param shardCount Number of shards
+     * @param shardKey Key the shard of a plant is chosen by
+     * @param collectionFactory Creates collection of each shard
+     * @param clock Clock the current date of watering operations is taken from
+     */
+    public ShardedPlantService(int shardCount, Function<Plant, String> shardKey,
+                               Supplier<PlantCollection> collectionFactory, Clock clock) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive: " + shardCount);
+        }
+        this.shards = new PlantService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new PlantService(collectionFactory.get(), clock);
+            shards[i].getPlantCollection().addListener(new ShardTracker(shardByPlant, i));
+        }
+        this.shardKey = shardKey;
+        this.clock = clock;
+        this.pool = new ForkJoinPool(Math.min(shardCount, Runtime.getRuntime().availableProcessors()));
+    }
+    public ShardedPlantService(int shardCount, Function<Plant, String> shardKey) {
+        this(shardCount, shardKey, PlantCollection::new, Clock.systemDefaultZone());
+    }
+    public ShardedPlantService(int shardCount) {
+        this(shardCount, Plant::getName);
+    }
+
+    /**
+     * Shard key made of the part of plant name before separator, e.g. "Brno/Fialka" belongs to site "Brno".
+     * Names without separator are keyed by the whole name.
+     */
+    public static Function<Plant, String> bySitePrefix(char separator) {
+        return plant -> {
+            String name = plant.getName();
+            int end = name.indexOf(separator);
+            return end < 0 ? name : name.substring(0, end);
+        };
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+    public PlantService getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * @return Index of shard given plant belongs to
+     */
+    public int shardOf(Plant plant) {
+        int hash = shardKey.apply(plant).hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Records the shard plants are added to, also for plants added to a shard collection directly
+     */
+    private static final class ShardTracker implements PlantCollectionListener {
+
+        private final Map<Plant, Integer> shardByPlant;
+        private final int index;
+
+        ShardTracker(Map<Plant, Integer> shardByPlant, int index) {
+            this.shardByPlant = shardByPlant;
+            this.index = index;
+        }
+
+        @Override
+        public void plantAdded(Plant plant) {
+            shardByPlant.put(plant, index);
+        }
+        @Override
+        public void plantRemoved(Plant plant) {
+            shardByPlant.remove(plant, index);
+        }
+    }
+
+    /**
+     * Loads plants from file, routing every row to its shard as it is parsed
+     * @return This service
+     */
+    public ShardedPlantService loadFromFile(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Plant plant = PlantParser.deserialize(line);
+                shards[shardOf(plant)].getPlantCollection().addPlant(plant);
+            }
+            DebugManager.print(ConsoleColor.BLUE + "Plants loaded from file " + file + " into " + shards.length + " shards");
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+        }
+        return this;
+    }
+    public ShardedPlantService loadFromFile(String path) {
+        return loadFromFile(new File(path));
+    }
+
+    /**
+     * Saves every shard to its own snapshot in directory, in parallel. Once all shards are saved,
+     * snapshots of shards this service doesn't have, left by a service with more shards, are deleted,
+     * so loadShards doesn't load their plants again.
+     */
+    public void saveShards(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            DebugManager.printError("Directory " + directory + " can't be created.");
+            return;
+        }
+        List<Boolean> saved = scatter(index -> shards[index].saveSnapshot(shardFile(directory, index)));
+        if (saved.contains(false)) {
+            DebugManager.printError("Not all shards were saved, snapshots in " + directory + " are kept.");
+            return;
+        }
+        File[] files = directory.listFiles((dir, name) -> shardIndex(name) >= shards.length);
+        if (files == null) {
+            DebugManager.printError("Directory " + directory + " can't be read.");
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                DebugManager.printError("Snapshot of removed shard " + file + " can't be deleted.");
+            }
+        }
+    }
+
+    /**
+     * Loads shards from snapshots written by saveShards, in parallel. Plants are moved to another shard
+     * if the snapshots were written with a different number of shards or shard key.
+     * @return This service
+     */
+    public ShardedPlantService loadShards(File directory) {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SHARD_FILE_PREFIX) && name.endsWith(SHARD_FILE_SUFFIX));
+        if (files == null) {
+            DebugManager.printError("Directory " + directory + " can't be read.");
+            return this;
+        }
+        try {
+            List<List<Plant>> misplaced = new ArrayList<>(files.length);
+            List<ForkJoinTask<List<Plant>>> tasks = new ArrayList<>(files.length);
+            for (File file : files) {
+                tasks.add(pool.submit(() -> loadShardFile(file)));
+            }
+            for (ForkJoinTask<List<Plant>> task : tasks) {
+                misplaced.add(task.join());
+            }
+            for (List<Plant> plants : misplaced) {
+                plants.forEach(plant -> shards[shardOf(plant)].getPlantCollection().addPlant(plant));
+            }
+            DebugManager.print(ConsoleColor.BLUE + "Plants(" + size() + ") loaded from " + files.length + " shard files");
+        } catch (UncheckedIOException | IllegalStateException e) {
+            DebugManager.printError("Exception thrown: " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Reads shard file and adds plants belonging to its shard, only one task loads each shard
+     * @return Plants belonging to other shards
+     */
+    private List<Plant> loadShardFile(File file) {
+        List<Plant> plants;
+        try {
+            plants = PlantSnapshot.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (PlantException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        // Plants of files not written by saveShards are all routed
+        int index = shardIndex(file.getName());
+        if (index < 0 || index >= shards.length) {
+            return plants;
+        }
+        List<Plant> misplaced = new ArrayList<>();
+        PlantCollection collection = shards[index].getPlantCollection();
+        for (Plant plant : plants) {
+            if (shardOf(plant) == index) {
+                collection.addPlant(plant);
+            } else {
+                misplaced.add(plant);
+            }
+        }
+        return misplaced;
+    }
+
+    private static File shardFile(File directory, int index) {
+        return new File(directory, SHARD_FILE_PREFIX + index + SHARD_FILE_SUFFIX);
+    }
+
+    /**
+     * @return Index of shard written to file of given name, -1 if it is not a shard file
+     */
+    private static int shardIndex(String name) {
+        if (!name.startsWith(SHARD_FILE_PREFIX) || !name.endsWith(SHARD_FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SHARD_FILE_PREFIX.length(), name.length() - SHARD_FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void addPlant(Plant plant) throws PlantException {
+        if (plant == null) throw new PlantException("Plant cannot be null.");
+        shards[shardOf(plant)].addPlant(plant);
+    }
+    public void removePlant(Plant plant) throws PlantException {
+        if (plant == null) throw new PlantException("Plant cannot be null.");
+        findShard(plant).removePlant(plant);
+    }
+    public void waterPlant(Plant plant, LocalDate date) throws PlantException {
+        if (plant == null) throw new PlantException("Plant cannot be null.");
+        findShard(plant).waterPlant(plant, date);
+    }
+    public void waterPlant(Plant plant) throws PlantException {
+        waterPlant(plant, LocalDate.now(clock));
+    }
+
+    /**
+     * Groups waterings by the shard their plants are in and applies the groups in parallel, each of them
+     * in one pass.
+     * @return Outcome of every event, in order of events
+     */
+    public List<WateringOutcome> waterPlants(List<WateringEvent> events) throws PlantException {
+        if (events == null) throw new PlantException("Watering events cannot be null.");
+        WateringOutcome[] outcomes = new WateringOutcome[events.size()];
+        List<List<Integer>> positions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            Plant plant = events.get(i).plant();
+            if (plant == null) {
+                outcomes[i] = WateringOutcome.NOT_FOUND;
+            } else {
+                positions.get(shardIndexOf(plant)).add(i);
+            }
+        }
+        scatter(index -> {
+            List<Integer> shardPositions = positions.get(index);
+            if (shardPositions.isEmpty()) {
+                return null;
+            }
+            List<WateringEvent> shardEvents = new ArrayList<>(shardPositions.size());
+            shardPositions.forEach(position -> shardEvents.add(events.get(position)));
+            List<WateringOutcome> shardOutcomes = shards[index].getPlantCollection().waterPlants(shardEvents);
+            for (int i = 0; i < shardOutcomes.size(); i++) {
+                outcomes[shardPositions.get(i)] = shardOutcomes.get(i);
+            }
+            return null;
+        });
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * @return Shard containing plant, its routed shard if the plant is not in any
+     */
+    private PlantService findShard(Plant plant) {
+        return shards[shardIndexOf(plant)];
+    }
+
+    /**
+     * @return Index of shard containing plant, index of its routed shard if the plant is not in any
+     */
+    private int shardIndexOf(Plant plant) {
+        Integer index = shardByPlant.get(plant);
+        return index != null ? index : shardOf(plant);
+    }
+
+    public int size() {
+        int size = 0;
+        for (PlantService shard : shards) {
+            size += shard.getPlantCollection().size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Plants of all shards, shard after shard
+     */
+    public List<Plant> getPlants() {
+        return concat(scatter(index -> shards[index].getPlants()));
+    }
+
+    /**
+     * @param asOf Date the watering need is evaluated for
+     * @return Plants needing watering as of given date, most overdue first
+     */
+    public List<Plant> getUnWateredPlants(LocalDate asOf) {
+        return PlantMerge.mergeSorted(scatter(index -> shards[index].getUnWateredPlants(asOf)),
+                Comparator.comparing(Plant::getNextWateringDate));
+    }
+    public List<Plant> getUnWateredPlants() {
+        return getUnWateredPlants(LocalDate.now(clock));
+    }
+
+    /**
+     * @return Plants satisfying condition, shard after shard
+     */
+    public List<Plant> getPlantsByCondition(Predicate<Plant> condition) {
+        return concat(scatter(index -> shards[index].getPlantCollection().getPlantsByCondition(condition)));
+    }
+
+    /**
+     * Sorts plants of every shard in parallel and merges them
+     * @return All plants in comparator order
+     */
+    public List<Plant> getPlantsSorted(Comparator<Plant> comparator) {
+        return PlantMerge.mergeSorted(scatter(index -> {
+            List<Plant> plants = shards[index].getPlants();
+            plants.sort(comparator);
+            return plants;
+        }), comparator);
+    }
+    public List<Plant> getPlantsSortedByName() {
+        return getPlantsSorted(Comparator.naturalOrder());
+    }
+    public List<Plant> getPlantsSortedByLastWateringDate() {
+        return getPlantsSorted(Comparator.comparing(Plant::getLastWateringDate));
+    }
+
+    /**
+     * Sorts collections of all shards by name in parallel
+     */
+    public void sortPlantsByName() {
+        scatter(index -> {
+            shards[index].getPlantCollection().sortPlantsByName();
+            return null;
+        });
+    }
+    /**
+     * Sorts collections of all shards by last watering date in parallel
+     */
+    public void sortPlantsByLastWateringDate() {
+        scatter(index -> {
+            shards[index].getPlantCollection().sortPlantsByLastWateringDate();
+            return null;
+        });
+    }
+
+    /**
+     * Runs task for every shard index in parallel
+     * @return Results in shard order
+     */
+    private <T> List<T> scatter(Function<Integer, T> task) {
+        List<ForkJoinTask<T>> submitted = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int index = i;
+            submitted.add(pool.submit(() -> task.apply(index)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (ForkJoinTask<T> result : submitted) {
+            results.add(result.join());
+        }
+        return results;
+    }
+
+    private static List<Plant> concat(List<List<Plant>> lists) {
+        int size = 0;
+        for (List<Plant> list : lists) {
+            size += list.size();
+        }
+        List<Plant> plants = new ArrayList<>(size);
+        lists.forEach(plants::addAll);
+        return plants;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,19 @@
+package cz.jpcz.houseplants.service;
+
+import java.io.File;
+
+/**
+ * Summary of a finished external sort
+ * @param file Sorted file
+ * @param plants Number of sorted plants
+ * @param runs Number of sorted runs the input was split into
+ * @param elapsedNanos Duration of the whole sort
+ */
+public record SortReport(File file, long plants, int runs, long elapsedNanos) {
+
+    @Override
+    public String toString() {
+        return String.format("Sorted %d plants in %d runs to %s in %.1f ms",
+                plants, runs, file, elapsedNanos / 1_000_000d);
+    }
+}
@@ -0,0 +1,21 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.model.Plant;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Watering load of a single day of a forecast
+ * @param date Day of the forecast
+ * @param count Number of plants to water on that day
+ * @param plants Plants to water, grouped by watering interval. The list is a read-only view
+ *               shared with the forecast, it is not copied for every day.
+ */
+public record WateringDay(LocalDate date, int count, List<Plant> plants) {
+
+    @Override
+    public String toString() {
+        return date + ": " + count + " plants";
+    }
+}
@@ -0,0 +1,190 @@
+package cz.jpcz.houseplants.service;
+
+import cz.jpcz.houseplants.model.Plant;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Forecasts which plants have to be watered on each day of a date range.
+ * <p>
+ * Every plant is assumed to be watered exactly on its due dates, overdue plants on the first day.
+ * Plants are bucketed once by watering interval and phase (first due day modulo interval), so a day
+ * of the forecast is answered by looking up one bucket per interval instead of checking every plant.
+ * Days are produced lazily and share the buckets, so memory does not grow with the length of the range.
+ */
+public class WateringForecaster {
+
+    private final long firstDay;
+    private final int days;
+    /** Intervals of plants due more than once in the range, ascending */
+    private final int[] intervals;
+    /** Buckets of recurring plants by interval and phase */
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    /** Plants due at most once in the range, by day offset */
+    private final Plant[][] singles;
+
+    /**
+     * Plants of one interval and phase sorted by their first due day
+     */
+    private static final class Bucket {
+        private final Plant[] plants;
+        private final long[] firstDays;
+
+        private Bucket(List<Plant> plants, List<Long> firstDays) {
+            Integer[] order = new Integer[plants.size()];
+            Arrays.setAll(order, i -> i);
+            Arrays.sort(order, Comparator.comparingLong(firstDays::get));
+            this.plants = new Plant[order.length];
+            this.firstDays = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                this.plants[i] = plants.get(order[i]);
+                this.firstDays[i] = firstDays.get(order[i]);
+            }
+        }
+
+        /**
+         * @return Number of plants already due on given day, they form a prefix of the bucket
+         */
+        private int dueOn(long day) {
+            int low = 0;
+            int high = firstDays.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (firstDays[middle] <= day) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Read-only list joining prefixes of several plant arrays
+     */
+    private static final class Slices extends AbstractList<Plant> {
+        private final List<Plant[]> arrays = new ArrayList<>();
+        private final List<Integer> ends = new ArrayList<>();
+        private int size;
+
+        private void add(Plant[] plants, int length) {
+            if (length > 0) {
+                arrays.add(plants);
+                size += length;
+                ends.add(size);
+            }
+        }
+
+        @Override
+        public Plant get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Invalid plant index: " + index);
+            }
+            int slice = 0;
+            while (ends.get(slice) <= index) {
+                slice++;
+            }
+            int start = slice == 0 ? 0 : ends.get(slice - 1);
+            return arrays.get(slice)[index - start];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Buckets plants for forecast of given range
+     * @param plants Plants to forecast, their state is read once here
+     * @param from First day of the forecast
+     * @param days Number of days of the forecast
+     */
+    public WateringForecaster(Collection<Plant> plants, LocalDate from, int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException("Number of days cannot be negative: " + days);
+        }
+        this.firstDay = from.toEpochDay();
+        this.days = days;
+        long end = firstDay + days;
+
+        Map<Long, List<Plant>> bucketPlants = new HashMap<>();
+        Map<Long, List<Long>> bucketDays = new HashMap<>();
+        List<List<Plant>> singleDays = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            singleDays.add(null);
+        }
+        TreeSet<Integer> recurringIntervals = new TreeSet<>();
+
+        for (Plant plant : plants) {
+            long interval = plant.getWateringInterval().toDays();
+            long due = Math.max(plant.getLastWateringDate().toEpochDay() + interval, firstDay);
+            if (due >= end) {
+                continue;
+            }
+            if (due + interval >= end) {
+                int offset = (int) (due - firstDay);
+                if (singleDays.get(offset) == null) {
+                    singleDays.set(offset, new ArrayList<>());
+                }
+                singleDays.get(offset).add(plant);
+                continue;
+            }
+            // Recurring plants have interval shorter than the range, so it fits into int
+            long key = bucketKey((int) interval, Math.floorMod(due, interval));
+            recurringIntervals.add((int) interval);
+            bucketPlants.computeIfAbsent(key, k -> new ArrayList<>()).add(plant);
+            bucketDays.computeIfAbsent(key, k -> new ArrayList<>()).add(due);
+        }
+
+        intervals = recurringIntervals.stream().mapToInt(Integer::intValue).toArray();
+        bucketPlants.forEach((key, list) -> buckets.put(key, new Bucket(list, bucketDays.get(key))));
+        singles = new Plant[days][];
+        for (int i = 0; i < days; i++) {
+            singles[i] = singleDays.get(i) == null ? new Plant[0] : singleDays.get(i).toArray(new Plant[0]);
+        }
+    }
+
+    private static long bucketKey(int interval, long phase) {
+        return ((long) interval << 32) | phase;
+    }
+
+    /**
+     * @param offset Day offset from the start of the forecast
+     * @return Watering load of that day
+     */
+    public WateringDay getDay(int offset) {
+        if (offset < 0 || offset >= days) {
+            throw new IndexOutOfBoundsException("Day " + offset + " is outside of the forecast of " + days + " days");
+        }
+        long day = firstDay + offset;
+        Slices plants = new Slices();
+        for (int interval : intervals) {
+            Bucket bucket = buckets.get(bucketKey(interval, Math.floorMod(day, interval)));
+            if (bucket != null) {
+                plants.add(bucket.plants, bucket.dueOn(day));
+            }
+        }
+        plants.add(singles[offset], singles[offset].length);
+        return new WateringDay(LocalDate.ofEpochDay(day), plants.size(), plants);
+    }
+
+    /**
+     * @return Lazily computed days of the forecast in date order
+     */
+    public Stream<WateringDay> days() {
+        return IntStream.range(0, days).mapToObj(this::getDay);
+    }
+}
@@ -1,17 +1,74 @@
 package cz.jpcz.houseplants.test;
 
 import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.metrics.PlantMetrics;
+import cz.jpcz.houseplants.model.ColumnarPlantCollection;
+import cz.jpcz.houseplants.model.ConcurrentPlantCollection;
 import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.model.PlantChange;
+import cz.jpcz.houseplants.model.PlantChangeFeed;
 import cz.jpcz.houseplants.model.PlantCollection;
+import cz.jpcz.houseplants.model.PlantOrder;
+import cz.jpcz.houseplants.model.SortedPlantView;
+import cz.jpcz.houseplants.model.WateringEvent;
+import cz.jpcz.houseplants.model.WateringOutcome;
+import cz.jpcz.houseplants.server.PlantHttpServer;
+import cz.jpcz.houseplants.service.DiffReport;
+import cz.jpcz.houseplants.service.ExportCompression;
+import cz.jpcz.houseplants.service.ExportReport;
+import cz.jpcz.houseplants.service.ImportReport;
+import cz.jpcz.houseplants.service.PlantDifference;
+import cz.jpcz.houseplants.service.PlantFileSorter;
 import cz.jpcz.houseplants.service.PlantService;
+import cz.jpcz.houseplants.service.ShardedPlantService;
+import cz.jpcz.houseplants.service.SortReport;
+import cz.jpcz.houseplants.service.WateringDay;
 import cz.jpcz.houseplants.util.DebugManager;
 import cz.jpcz.houseplants.util.ConsoleColor;
+import cz.jpcz.houseplants.util.parser.PlantParser;
+import cz.jpcz.houseplants.util.parser.PlantSnapshot;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * Core test for project HousePlants
@@ -41,10 +98,34 @@ public final class DataTest {
         testPlantCreation();
         testInvalidWateringInterval();
         testSavingAndLoading();
+        testParallelLoading();
+        testSnapshotRoundTrip();
+        testCompressedExport();
+        testExternalSortAndDiff();
         testSortPlantsByName();
         testSortPlantsByLastWateringDate();
         testErrorLoadingWrongFileFormat();
+        testErrorTolerantImport();
         testGetUnWateredPlants();
+        testWateringAsOfDate();
+        testWateringForecast();
+        testWateringIndexUpdates();
+        testBulkWatering();
+        testWateringOrderAfterBatch();
+        testColumnarCollection();
+        testConcurrentUpdates();
+        testNameIndex();
+        testRemovingCopiesByName();
+        testNotesSearch();
+        testPlantIds();
+        testCollectionFromList();
+        testPlantQuery();
+        testSortedViews();
+        testChangeLogRecovery();
+        testServiceMetrics();
+        testShardedService();
+        testHttpServer();
+        testChangeFeed();
 
         if (fileCleanup) {
             cleanupGeneratedFiles();
@@ -98,6 +179,209 @@ public final class DataTest {
         }
     }
 
+    private static void testParallelLoading() {
+        DebugManager.printHeader("Testing parallel loading of plants (should match sequential loading)");
+
+        PlantService sequential = new PlantService();
+        sequential.loadFromFile("src/main/resources/kvetiny.txt");
+        PlantService parallel = new PlantService();
+        parallel.loadFromFileParallel("src/main/resources/kvetiny.txt", 4);
+
+        List<String> expected = sequential.getPlants().stream().map(PlantParser::serialize).toList();
+        List<String> actual = parallel.getPlants().stream().map(PlantParser::serialize).toList();
+        if (expected.equals(actual)) {
+            DebugManager.print(ConsoleColor.GREEN + "Parallel loading matches sequential loading. "
+                    + parallel.getLastLoadReport());
+        } else {
+            DebugManager.printError("ERROR! Parallel loading differs from sequential loading: " + actual);
+        }
+    }
+
+    private static void testSnapshotRoundTrip() {
+        DebugManager.printHeader("Testing conversion to binary snapshot and back");
+
+        PlantService.convertToSnapshot(new File("src/main/resources/kvetiny.txt"),
+                new File("src/main/resources/test-plants.snapshot"));
+        PlantService.convertFromSnapshot(new File("src/main/resources/test-plants.snapshot"),
+                new File("src/main/resources/test-plants3.txt"));
+        try {
+            List<String> expected = Files.readAllLines(Path.of("src/main/resources/kvetiny.txt"));
+            List<String> actual = Files.readAllLines(Path.of("src/main/resources/test-plants3.txt"));
+            if (expected.equals(actual)) {
+                DebugManager.print(ConsoleColor.GREEN + "Snapshot round trip preserved all plants.");
+            } else {
+                DebugManager.printError("ERROR! Snapshot round trip differs: " + actual);
+            }
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during snapshot round trip: " + e.getMessage());
+        }
+
+        File snapshot = new File("src/main/resources/test-plants.snapshot");
+        try {
+            PlantSnapshot.write(List.of(new Plant("Daleká budoucnost", Duration.ofDays(7), LocalDate.of(100_000, 1, 1))),
+                    snapshot);
+            DebugManager.printError("ERROR! Date out of snapshot range was written");
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during snapshot test: " + e.getMessage());
+        } catch (PlantException e) {
+            DebugManager.print(ConsoleColor.GREEN + "Date out of range rejected: " + e.getMessage());
+        }
+        // Negative length of the first name and epoch day out of range of the first planted date
+        int firstRecord = 24;
+        for (int[] corruption : new int[][] {{firstRecord + 16, -1}, {firstRecord, Integer.MAX_VALUE}}) {
+            try {
+                PlantService.convertToSnapshot(new File("src/main/resources/kvetiny.txt"), snapshot);
+                try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, corruption[1]), corruption[0]);
+                }
+                PlantSnapshot.read(snapshot);
+                DebugManager.printError("ERROR! Corrupted snapshot was read");
+            } catch (IOException e) {
+                DebugManager.printError("ERROR! Exception during snapshot test: " + e.getMessage());
+            } catch (PlantException e) {
+                DebugManager.print(ConsoleColor.GREEN + "Corrupted snapshot rejected: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void testCompressedExport() {
+        DebugManager.printHeader("Testing asynchronous compressed export");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        File file = new File("src/main/resources/test-plants.txt.gz");
+        CompletableFuture<ExportReport> export = plantService.exportAsync(file, ExportCompression.GZIP_FAST);
+        // Not part of the export, its values were copied already
+        plantService.getPlant(0).setName("Změněno po exportu");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(export.join().file())), StandardCharsets.UTF_8))) {
+            List<String> expected = Files.readAllLines(Path.of("src/main/resources/kvetiny.txt"));
+            List<String> actual = reader.lines().toList();
+            if (expected.equals(actual)) {
+                DebugManager.print(ConsoleColor.GREEN + export.join().toString());
+            } else {
+                DebugManager.printError("ERROR! Exported file differs: " + actual);
+            }
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during export test: " + e.getMessage());
+        }
+
+        // Background export and save to the same file at once, each writes its own temporary file
+        PlantService plantService1 = new PlantService();
+        plantService1.loadFromFile("src/main/resources/kvetiny.txt");
+        File file1 = new File("src/main/resources/test-plants-export.txt");
+        CompletableFuture<ExportReport> export1 = plantService1.exportAsync(file1, ExportCompression.NONE);
+        plantService1.saveToFile(file1);
+        export1.join();
+        try (Stream<Path> siblings = Files.list(file1.toPath().toAbsolutePath().getParent())) {
+            List<String> expected = Files.readAllLines(Path.of("src/main/resources/kvetiny.txt"));
+            List<String> actual = Files.readAllLines(file1.toPath());
+            boolean leftover = siblings.anyMatch(path -> path.getFileName().toString().startsWith(file1.getName())
+                    && path.getFileName().toString().endsWith(".tmp"));
+            if (expected.equals(actual) && !leftover) {
+                DebugManager.print(ConsoleColor.GREEN + "Concurrent export and save left complete file.");
+            } else {
+                DebugManager.printError("ERROR! Concurrent export and save differ or left temporary file: " + actual);
+            }
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during concurrent export test: " + e.getMessage());
+        }
+
+        // Compressed file is read back by both loading methods
+        PlantService loadService = new PlantService();
+        plantService1.saveToFile(file, ExportCompression.GZIP);
+        loadService.loadFromFile(file);
+        ImportReport report = loadService.importFromFile(file, 0);
+        if (loadService.getPlants().size() == 2 * plantService1.getPlants().size()
+                && report.getAccepted() == plantService1.getPlants().size()) {
+            DebugManager.print(ConsoleColor.GREEN + "Compressed file loaded and imported: " + report);
+        } else {
+            DebugManager.printError("ERROR! Compressed file read wrong: " + loadService.getPlants().size() + " " + report);
+        }
+
+        // Replaced file keeps its permissions, a new file gets the usual ones instead of owner-only
+        try {
+            Files.setPosixFilePermissions(file1.toPath(), PosixFilePermissions.fromString("rw-rw-r--"));
+            plantService1.saveToFile(file1);
+            String replaced = PosixFilePermissions.toString(Files.getPosixFilePermissions(file1.toPath()));
+            Files.delete(file1.toPath());
+            plantService1.saveToFile(file1);
+            String created = PosixFilePermissions.toString(Files.getPosixFilePermissions(file1.toPath()));
+            if (replaced.equals("rw-rw-r--") && created.equals("rw-r--r--")) {
+                DebugManager.print(ConsoleColor.GREEN + "Saved files have permissions " + replaced + " and " + created);
+            } else {
+                DebugManager.printError("ERROR! Saved files have permissions " + replaced + " and " + created);
+            }
+        } catch (UnsupportedOperationException e) {
+            DebugManager.print(ConsoleColor.BLUE + "File permissions are not supported, skipping permission test.");
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during permission test: " + e.getMessage());
+        }
+    }
+
+    private static void testExternalSortAndDiff() {
+        DebugManager.printHeader("Testing external sort and diff of plant files");
+
+        File before = new File("src/main/resources/test-plants-before.txt");
+        File after = new File("src/main/resources/test-plants-after.txt");
+        File sorted = new File("src/main/resources/test-plants-sorted.txt");
+        try {
+            PlantCollection collection = new PlantCollection();
+            PlantService plantService = new PlantService(collection);
+            plantService.loadFromFile("src/main/resources/kvetiny.txt");
+            plantService.addPlant(new Plant("Aloe", Duration.ofDays(14), "", LocalDate.of(2022, 3, 1),
+                    LocalDate.of(2022, 3, 1)));
+            plantService.addPlant(new Plant("Fialka 1", Duration.ofDays(5), "Druhá fialka", LocalDate.of(2022, 4, 1),
+                    LocalDate.of(2022, 4, 1)));
+            plantService.saveToFile(before);
+            List<String> expectedRows = plantService.getPlants().stream()
+                    .sorted(PlantOrder.NAME.comparator()).map(PlantParser::serialize).toList();
+
+            plantService.removePlant(collection.getPlantsByName("Sukulent v koupelně").get(0));
+            collection.getPlantsByName("Aloe").get(0).setNotes("Přesazená");
+            plantService.addPlant(new Plant("Monstera", Duration.ofDays(7)));
+            plantService.saveToFile(after);
+
+            // Run of two plants forces the sort to merge several runs
+            SortReport report = new PlantFileSorter(2, null).sort(before, sorted, PlantOrder.NAME.comparator());
+            List<String> sortedRows = Files.readAllLines(sorted.toPath());
+            if (report.runs() == 3 && sortedRows.equals(expectedRows)) {
+                DebugManager.print(ConsoleColor.GREEN + report.toString());
+            } else {
+                DebugManager.printError("ERROR! External sort failed: " + report + " " + sortedRows);
+            }
+
+            List<PlantDifference> differences = new ArrayList<>();
+            DiffReport diff = plantService.diffFiles(before, after, differences::add);
+            List<String> described = differences.stream()
+                    .map(d -> d.type() + " " + (d.after() != null ? d.after() : d.before()).getName()).toList();
+            if (diff != null && diff.unchanged() == 3 && described.equals(
+                    List.of("CHANGED Aloe", "ADDED Monstera", "REMOVED Sukulent v koupelně"))) {
+                DebugManager.print(ConsoleColor.GREEN + diff.toString());
+            } else {
+                DebugManager.printError("ERROR! Diff of plant files failed: " + diff + " " + described);
+            }
+
+            // Group of plants with one name: one row stays, one is changed and one removed
+            List<String> group = new ArrayList<>();
+            for (int days = 1; days <= 4; days++) {
+                group.add(PlantParser.serialize(new Plant("Bazalka", Duration.ofDays(days), LocalDate.of(2022, 5, 1))));
+            }
+            Files.write(before.toPath(), List.of(group.get(2), group.get(0), group.get(1)));
+            Files.write(after.toPath(), List.of(group.get(3), group.get(1)));
+            differences.clear();
+            DiffReport groupDiff = plantService.diffFiles(before, after, differences::add);
+            if (groupDiff != null && groupDiff.unchanged() == 1 && groupDiff.changed() == 1
+                    && groupDiff.removed() == 1 && groupDiff.added() == 0) {
+                DebugManager.print(ConsoleColor.GREEN + "Same-name group matched by rows: " + groupDiff);
+            } else {
+                DebugManager.printError("ERROR! Diff of same-name group failed: " + groupDiff + " " + differences);
+            }
+        } catch (IOException | PlantException e) {
+            DebugManager.printError("ERROR! Exception during external sort test: " + e.getMessage());
+        }
+    }
+
     private static void testErrorLoadingWrongFileFormat() {
         DebugManager.printHeader("Testing loading plants from wrong format files");
 
@@ -110,6 +394,35 @@ public final class DataTest {
         DebugManager.print(ConsoleColor.GREEN + "Finished testing wrong format files (2 errors should have been printed above).");
     }
 
+    private static void testErrorTolerantImport() {
+        DebugManager.printHeader("Testing error-tolerant import of wrong format files");
+
+        PlantService plantService = new PlantService();
+        ImportReport report = plantService.importFromFile("src/main/resources/kvetiny-spatne-datum.txt", 5);
+        if (report.getAccepted() == 2 && report.getRejected() == 1 && !report.isAborted()
+                && plantService.getPlants().size() == 2) {
+            DebugManager.print(ConsoleColor.GREEN + "Imported good rows, rejected: " + report.getRejectedRows());
+        } else {
+            DebugManager.printError("ERROR! Unexpected import result: " + report);
+        }
+
+        PlantService plantService1 = new PlantService();
+        ImportReport report1 = plantService1.importFromFile("src/main/resources/kvetiny-spatne-frekvence.txt", 0);
+        if (report1.isAborted() && report1.getAccepted() == 2) {
+            DebugManager.print(ConsoleColor.GREEN + "Import stopped after exceeding error budget: " + report1.getAbortReason());
+        } else {
+            DebugManager.printError("ERROR! Import should have been aborted: " + report1);
+        }
+
+        PlantService plantService2 = new PlantService();
+        ImportReport report2 = plantService2.importFromFile("src/main/resources/kvetiny-spatne-datum.txt", Integer.MAX_VALUE);
+        if (report2.getAccepted() == 2 && report2.getRejectedRows().size() == 1 && !report2.isAborted()) {
+            DebugManager.print(ConsoleColor.GREEN + "Imported with unlimited error budget: " + report2.getErrorBudget());
+        } else {
+            DebugManager.printError("ERROR! Unexpected import result with unlimited error budget: " + report2);
+        }
+    }
+
     private static void testGetUnWateredPlants() {
         DebugManager.printHeader("Testing getUnWateredPlants method");
 
@@ -120,6 +433,748 @@ public final class DataTest {
                 DebugManager.print(ConsoleColor.GREEN + plant.getWateringInfo()));
     }
 
+    private static void testWateringAsOfDate() {
+        DebugManager.printHeader("Testing watering queries evaluated as of fixed date");
+
+        LocalDate today = LocalDate.of(2021, 5, 14);
+        PlantService plantService = new PlantService(new PlantCollection(),
+                Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+
+        List<String> unWatered = plantService.getUnWateredPlants().stream().map(Plant::getName).toList();
+        List<String> expected = plantService.getPlants().stream()
+                .filter(plant -> plant.isWateringNeeded(today)).map(Plant::getName).toList();
+        List<String> report = plantService.getWateringReport();
+        if (unWatered.equals(List.of("Sukulent v koupelně")) && unWatered.equals(expected)
+                && report.get(1).contains("(4 days ago)") && !report.get(0).contains("Consider watering")) {
+            DebugManager.print(ConsoleColor.GREEN + "Plants needing watering on " + today + ": " + unWatered);
+        } else {
+            DebugManager.printError("ERROR! Unexpected watering state on " + today + ": " + unWatered + " " + report);
+        }
+    }
+
+    private static void testWateringForecast() {
+        DebugManager.printHeader("Testing watering forecast");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+
+        List<WateringDay> forecast = plantService.forecastWatering(LocalDate.of(2021, 5, 14), 10).toList();
+        int total = forecast.stream().mapToInt(WateringDay::count).sum();
+        if (forecast.size() == 10 && total == 7 && forecast.get(0).count() == 2 && forecast.get(4).count() == 2
+                && forecast.get(1).plants().get(0).getName().equals("Fialka 1")) {
+            forecast.forEach(day -> DebugManager.print(ConsoleColor.GREEN + day.toString() + " "
+                    + day.plants().stream().map(Plant::getName).toList()));
+        } else {
+            DebugManager.printError("ERROR! Unexpected watering forecast: " + forecast);
+        }
+    }
+
+    private static void testWateringIndexUpdates() {
+        DebugManager.printHeader("Testing watering index after watering a plant");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        Plant plant = plantService.getPlant(0);
+        plant.doWateringNow();
+
+        List<Plant> dueSoon = plantService.getPlantCollection()
+                .getPlantsDueWithin(LocalDate.now(), (int) plant.getWateringInterval().toDays() + 1);
+        if (!plantService.getUnWateredPlants().contains(plant) && dueSoon.contains(plant)) {
+            DebugManager.print(ConsoleColor.GREEN + "Watered plant moved in index: " + plant.getWateringInfo());
+        } else {
+            DebugManager.printError("ERROR! Watering index was not updated for " + plant);
+        }
+    }
+
+    private static void testBulkWatering() {
+        DebugManager.printHeader("Testing bulk watering on all collections");
+
+        LocalDate today = LocalDate.of(2021, 5, 14);
+        List<WateringOutcome> expected = List.of(WateringOutcome.APPLIED, WateringOutcome.SUPERSEDED,
+                WateringOutcome.SUPERSEDED, WateringOutcome.INVALID_DATE, WateringOutcome.NOT_FOUND,
+                WateringOutcome.NOT_FOUND);
+        for (PlantCollection collection : List.of(new PlantCollection(), new ColumnarPlantCollection(),
+                new ConcurrentPlantCollection())) {
+            String name = collection.getClass().getSimpleName();
+            PlantService plantService = new PlantService(collection);
+            plantService.loadFromFile("src/main/resources/kvetiny.txt");
+            List<Plant> plants = plantService.getPlants();
+            try {
+                List<WateringOutcome> outcomes = plantService.waterPlants(List.of(
+                        new WateringEvent(plants.get(2), LocalDate.of(2021, 5, 13)),
+                        new WateringEvent(plants.get(2), LocalDate.of(2021, 5, 11)),
+                        new WateringEvent(plants.get(0), LocalDate.of(2021, 5, 1)),
+                        new WateringEvent(plants.get(1), LocalDate.of(2021, 3, 1)),
+                        new WateringEvent(null, today),
+                        new WateringEvent(new Plant("Kaktus"), today)));
+                if (outcomes.equals(expected) && plantService.getUnWateredPlants(today).isEmpty()
+                        && plants.get(2).getLastWateringDate().equals(LocalDate.of(2021, 5, 13))) {
+                    DebugManager.print(ConsoleColor.GREEN + name + " applied batch: " + outcomes);
+                } else {
+                    DebugManager.printError("ERROR! " + name + " applied batch wrong: " + outcomes + " "
+                            + plantService.getUnWateredPlants(today));
+                }
+            } catch (PlantException e) {
+                DebugManager.printError("ERROR! " + e.getMessage());
+            }
+        }
+    }
+
+    private static void testWateringOrderAfterBatch() {
+        DebugManager.printHeader("Testing order of plants due on the same day after batch and single waterings");
+
+        // Large enough for the batch to update the index and the sorted view once at its end
+        LocalDate watered = LocalDate.of(2021, 6, 1);
+        try {
+            PlantCollection batch = new PlantCollection();
+            PlantCollection single = new PlantCollection();
+            List<WateringEvent> events = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String name = "Rostlina " + i;
+                LocalDate date = LocalDate.of(2021, 5, 1 + i % 28);
+                batch.addPlant(new Plant(name, Duration.ofDays(7), date));
+                single.addPlant(new Plant(name, Duration.ofDays(7), date));
+                expected.add(name);
+            }
+            batch.getPlantsToWater(watered);
+            single.getPlantsToWater(watered);
+            SortedPlantView view = batch.getSortedView(PlantOrder.NEXT_WATERING_DATE);
+            // Watered in reverse order, the whole batch at once or one event per batch
+            for (int i = 99; i >= 0; i--) {
+                events.add(new WateringEvent(batch.getPlant(i), watered));
+                single.waterPlants(List.of(new WateringEvent(single.getPlant(i), watered)));
+            }
+            batch.waterPlants(events);
+
+            List<String> batchOrder = batch.getPlantsDueWithin(watered, 8).stream().map(Plant::getName).toList();
+            List<String> singleOrder = single.getPlantsDueWithin(watered, 8).stream().map(Plant::getName).toList();
+            List<String> viewOrder = view.stream().map(Plant::getName).toList();
+            if (batchOrder.equals(expected) && singleOrder.equals(expected) && viewOrder.equals(expected)) {
+                DebugManager.print(ConsoleColor.GREEN + "Plants due on the same day stay in order of adding: "
+                        + batchOrder.subList(0, 5) + "...");
+            } else {
+                DebugManager.printError("ERROR! Plants due on the same day in wrong order: " + batchOrder + " " + singleOrder);
+            }
+        } catch (PlantException e) {
+            DebugManager.printError("ERROR! " + e.getMessage());
+        }
+    }
+
+    private static void testColumnarCollection() {
+        DebugManager.printHeader("Testing columnar plant collection (should behave as default collection)");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        PlantService columnarService = new PlantService(new ColumnarPlantCollection());
+        columnarService.loadFromFile("src/main/resources/kvetiny.txt");
+
+        plantService.getPlantCollection().sortPlantsByLastWateringDate();
+        columnarService.getPlantCollection().sortPlantsByLastWateringDate();
+        columnarService.getPlant(0).setNotes("Columnar notes");
+        plantService.getPlant(0).setNotes("Columnar notes");
+        // Removal from the middle of collection order, then a plant reusing the freed slot is added to the end
+        for (PlantService service : List.of(plantService, columnarService)) {
+            PlantCollection collection = service.getPlantCollection();
+            collection.removePlantById(collection.getPlantId(collection.getPlant(1)));
+            try {
+                service.addPlant(new Plant("Monstera", Duration.ofDays(10), LocalDate.of(2021, 5, 1)));
+            } catch (PlantException e) {
+                DebugManager.printError("ERROR! " + e.getMessage());
+            }
+        }
+
+        List<String> expected = plantService.getPlants().stream().map(PlantParser::serialize).toList();
+        List<String> actual = columnarService.getPlants().stream().map(PlantParser::serialize).toList();
+        List<String> unWatered = columnarService.getUnWateredPlants().stream().map(Plant::getName).toList();
+        if (expected.equals(actual)
+                && unWatered.equals(plantService.getUnWateredPlants().stream().map(Plant::getName).toList())) {
+            DebugManager.print(ConsoleColor.GREEN + "Columnar collection matches default collection: " + actual);
+        } else {
+            DebugManager.printError("ERROR! Columnar collection differs from default collection: " + actual);
+        }
+    }
+
+    /**
+     * Stress test of ConcurrentPlantCollection: writer threads add, water and remove their own plants
+     * while reader threads take snapshots, no update may be lost
+     */
+    private static void testConcurrentUpdates() {
+        DebugManager.printHeader("Testing concurrent updates of plants (no update should be lost)");
+
+        final int writers = 8;
+        final int plantsPerWriter = 2000;
+        final LocalDate baseDate = LocalDate.of(2020, 1, 1);
+        PlantService plantService = new PlantService(new ConcurrentPlantCollection());
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        DebugManager.setDebug(false);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < plantsPerWriter; i++) {
+                        Plant plant = new Plant("Writer " + writer + " plant " + i, Duration.ofDays(1),
+                                "", baseDate, baseDate);
+                        plantService.addPlant(plant);
+                        plantService.waterPlant(plant, baseDate.plusDays(i));
+                        if (i % 10 == 0) {
+                            plantService.removePlant(plant);
+                        }
+                    }
+                } catch (PlantException | RuntimeException e) {
+                    failures.add(e.toString());
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        List<Plant> snapshot = plantService.getPlants();
+                        if (new HashSet<>(snapshot).size() != snapshot.size()) {
+                            failures.add("Snapshot contains duplicates");
+                        }
+                        plantService.getUnWateredPlants();
+                    } catch (RuntimeException e) {
+                        failures.add(e.toString());
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        try {
+            for (Thread thread : threads.subList(0, writers)) {
+                thread.join();
+            }
+            running.set(false);
+            for (Thread thread : threads.subList(writers, threads.size())) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add("Interrupted");
+        }
+        DebugManager.setDebug(true);
+
+        List<Plant> plants = plantService.getPlants();
+        int expectedSize = writers * (plantsPerWriter - plantsPerWriter / 10);
+        for (Plant plant : plants) {
+            int i = Integer.parseInt(plant.getName().substring(plant.getName().lastIndexOf(' ') + 1));
+            if (!plant.getLastWateringDate().equals(baseDate.plusDays(i))) {
+                failures.add("Lost watering of " + plant);
+            }
+        }
+        if (failures.isEmpty() && plants.size() == expectedSize && plantService.getPlantCollection().size() == expectedSize) {
+            DebugManager.print(ConsoleColor.GREEN + "All " + plants.size() + " concurrent updates were applied.");
+        } else {
+            DebugManager.printError("ERROR! Concurrent updates were lost (" + plants.size() + "/" + expectedSize
+                    + "): " + failures.stream().limit(5).toList());
+        }
+    }
+
+    private static void testNameIndex() {
+        DebugManager.printHeader("Testing lookup of plants by name and name prefix");
+
+        for (PlantCollection plantCollection : List.of(new PlantCollection(), new ColumnarPlantCollection(),
+                new ConcurrentPlantCollection())) {
+            String name = plantCollection.getClass().getSimpleName();
+            PlantService plantService = new PlantService(plantCollection);
+            plantService.loadFromFile("src/main/resources/kvetiny.txt");
+            plantService.getPlant(0).setName("Fialka přejmenovaná");
+
+            boolean renamed = plantCollection.getPlantsByName("Fialka 1").isEmpty()
+                    && plantCollection.getPlantsByName("Fialka přejmenovaná").size() == 1;
+            List<String> names = plantCollection.getNamesByPrefix("S", 10);
+            int removed = plantCollection.removePlantsByName("Sukulent v koupelně");
+            if (renamed && names.equals(List.of("Sukulent v koupelně")) && removed == 1
+                    && plantCollection.getPlantsByNamePrefix("S", 10).isEmpty() && plantCollection.size() == 2) {
+                DebugManager.print(ConsoleColor.GREEN + name + " name index follows renaming and removal: "
+                        + plantCollection.getNamesByPrefix("", 10));
+            } else {
+                DebugManager.printError("ERROR! " + name + " name index is inconsistent: "
+                        + plantCollection.getNamesByPrefix("", 10));
+            }
+        }
+    }
+
+    /**
+     * Plant added twice and removed by name has to be removed from listeners as many times as it was added
+     */
+    private static void testRemovingCopiesByName() {
+        DebugManager.printHeader("Testing removal by name of a plant added twice");
+
+        for (PlantCollection plantCollection : List.of(new PlantCollection(), new ConcurrentPlantCollection())) {
+            String name = plantCollection.getClass().getSimpleName();
+            try {
+                Plant plant = new Plant("Kapradina", Duration.ofDays(3), LocalDate.of(2021, 5, 1));
+                SortedPlantView byName = plantCollection.getSortedView(PlantOrder.NAME);
+                PlantChangeFeed feed = plantCollection.getChangeFeed();
+                plantCollection.addPlant(plant);
+                plantCollection.addPlant(plant);
+                int removed = plantCollection.removePlantsByName("Kapradina");
+                long removals = feed.getChangesAfter(0, 10).stream()
+                        .filter(change -> change.type() == PlantChange.Type.REMOVED).count();
+                if (removed == 2 && removals == 2 && byName.size() == 0 && plantCollection.size() == 0) {
+                    DebugManager.print(ConsoleColor.GREEN + name + " notified both removed copies.");
+                } else {
+                    DebugManager.printError("ERROR! " + name + " removed " + removed + " copies, notified " + removals
+                            + ", sorted view still has " + byName.size());
+                }
+            } catch (PlantException e) {
+                DebugManager.printError("ERROR! Exception thrown during removal of copies: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void testNotesSearch() {
+        DebugManager.printHeader("Testing full-text search in notes");
+
+        for (PlantCollection collection : List.of(new PlantCollection(), new ColumnarPlantCollection(),
+                new ConcurrentPlantCollection())) {
+            String name = collection.getClass().getSimpleName();
+            PlantService plantService = new PlantService(collection);
+            plantService.loadFromFile("src/main/resources/kvetiny.txt");
+
+            List<String> notWatered = collection.getPlantsByNotes("nezaleva").stream().map(Plant::getName).toList();
+            List<String> violet = collection.getPlantsByNotes("FIALOVA hezka").stream().map(Plant::getName).toList();
+            int any = collection.getPlantsByAnyNotes("hezká, nezalévá").size();
+            List<String> prefixed = collection.getPlantsByNotesPrefix("fial").stream().map(Plant::getName).toList();
+            collection.getPlantsByName("Sukulent v koupelně").get(0).setNotes("Zalévat jednou ročně");
+            boolean updated = collection.getPlantsByNotes("nezaleva").isEmpty()
+                    && collection.getPlantsByNotes("rocne").size() == 1;
+            if (notWatered.equals(List.of("Sukulent v koupelně")) && violet.equals(List.of("Fialka 1")) && any == 2
+                    && prefixed.equals(List.of("Fialka 1")) && updated && collection.getPlantsByNotes("").isEmpty()) {
+                DebugManager.print(ConsoleColor.GREEN + name + " found notes: " + notWatered + " " + violet);
+            } else {
+                DebugManager.printError("ERROR! " + name + " notes search failed: " + notWatered + " " + violet
+                        + " " + any + " " + prefixed + " " + updated);
+            }
+        }
+    }
+
+    private static void testPlantIds() {
+        DebugManager.printHeader("Testing stable plant ids on all collections");
+
+        for (PlantCollection collection : List.of(new PlantCollection(), new ColumnarPlantCollection(),
+                new ConcurrentPlantCollection())) {
+            String name = collection.getClass().getSimpleName();
+            PlantService plantService = new PlantService(collection);
+            try {
+                long fialka = plantService.addPlant(new Plant("Fialka"));
+                long aloe = plantService.addPlant(new Plant("Aloe"));
+                long kaktus = plantService.addPlant(new Plant("Kaktus"));
+                plantService.removePlant(0);
+                collection.sortPlantsByName();
+                boolean stable = plantService.getPlantById(aloe).getName().equals("Aloe")
+                        && plantService.getPlantById(kaktus).getName().equals("Kaktus")
+                        && collection.getPlantById(fialka) == null
+                        // Ids which were never returned by addPlant must not match any plant
+                        && collection.getPlantById(0) == null && collection.getPlantById(-1) == null
+                        && !collection.removePlantById(0)
+                        && !collection.removePlantById(-1) && collection.size() == 2
+                        && collection.getPlantId(plantService.getPlant(1)) == kaktus;
+                plantService.removePlantById(aloe);
+                long bonsai = plantService.addPlant(new Plant("Bonsai"));
+                if (stable && bonsai != aloe && collection.getPlantById(aloe) == null && collection.size() == 2
+                        && plantService.getPlant(1).getName().equals("Bonsai")) {
+                    DebugManager.print(ConsoleColor.GREEN + name + " keeps ids stable: "
+                            + collection.getPlants().stream().map(Plant::getName).toList());
+                } else {
+                    DebugManager.printError("ERROR! " + name + " ids are not stable: " + collection.getPlants());
+                }
+                plantService.removePlantById(aloe);
+                DebugManager.printError("ERROR! " + name + " removed plant with unknown id.");
+            } catch (PlantException e) {
+                DebugManager.print(ConsoleColor.GREEN + "Correctly rejected: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void testCollectionFromList() {
+        DebugManager.printHeader("Testing collections created from list of plants");
+
+        try {
+            List<Plant> plants = List.of(
+                    new Plant("Fialka", Duration.ofDays(3), LocalDate.of(2021, 5, 1)),
+                    new Plant("Aloe", Duration.ofDays(14), LocalDate.of(2021, 5, 1)),
+                    new Plant("Kaktus", Duration.ofDays(30), LocalDate.of(2021, 5, 1)));
+            for (PlantCollection collection : List.of(new PlantCollection(plants), new ColumnarPlantCollection(plants),
+                    new ConcurrentPlantCollection(plants))) {
+                String name = collection.getClass().getSimpleName();
+                List<String> due = collection.getPlantsToWater(LocalDate.of(2021, 5, 20)).stream()
+                        .map(Plant::getName).toList();
+                long id = collection.addPlant(new Plant("Monstera"));
+                if (collection.size() == 4 && due.equals(List.of("Fialka", "Aloe"))
+                        && collection.getPlantsByName("Kaktus").size() == 1
+                        && collection.getPlantById(id).getName().equals("Monstera")) {
+                    DebugManager.print(ConsoleColor.GREEN + name + " created from list: " + due);
+                } else {
+                    DebugManager.printError("ERROR! " + name + " created from list is inconsistent: " + due);
+                }
+            }
+        } catch (PlantException e) {
+            DebugManager.printError("ERROR! " + e.getMessage());
+        }
+    }
+
+    private static void testPlantQuery() {
+        DebugManager.printHeader("Testing lazy plant queries with sorting and paging");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        for (int i = 0; i < 20; i++) {
+            try {
+                plantService.addPlant(new Plant("Kaktus " + (char) ('A' + (i * 7) % 20), Duration.ofDays(1 + i % 5),
+                        "", LocalDate.of(2020, 1, 1), LocalDate.of(2021, 1, 1 + i)));
+            } catch (PlantException e) {
+                DebugManager.printError("ERROR! Exception thrown during plant creation: " + e.getMessage());
+            }
+        }
+
+        Comparator<Plant> byDate = Comparator.comparing(Plant::getLastWateringDate);
+        List<Plant> expected = plantService.getPlants().stream()
+                .filter(plant -> plant.getName().startsWith("Kaktus"))
+                .sorted(byDate.reversed()).skip(5).limit(5).toList();
+        List<Plant> page = plantService.queryPlants()
+                .where(plant -> plant.getName().startsWith("Kaktus"))
+                .sortedBy(byDate.reversed())
+                .page(1, 5)
+                .toList();
+        long count = plantService.queryPlants().where(plant -> plant.getName().startsWith("Kaktus")).count();
+        if (page.equals(expected) && count == 20) {
+            DebugManager.print(ConsoleColor.GREEN + "Second page of " + count + " plants: "
+                    + page.stream().map(Plant::getName).toList());
+        } else {
+            DebugManager.printError("ERROR! Query returned unexpected page " + page + " or count " + count);
+        }
+    }
+
+    private static void testSortedViews() {
+        DebugManager.printHeader("Testing sorted views following changes of plants");
+
+        PlantService plantService = new PlantService();
+        PlantCollection plantCollection = plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        SortedPlantView byName = plantCollection.getSortedView(PlantOrder.NAME);
+        SortedPlantView byNextWatering = plantCollection.getSortedView(PlantOrder.NEXT_WATERING_DATE);
+
+        Plant first = plantService.getPlant(0);
+        first.setName("Zamiokulkas");
+        plantCollection.waterPlant(plantService.getPlant(2), LocalDate.of(2021, 5, 20));
+        List<String> names = byName.stream().map(Plant::getName).toList();
+        List<String> dueOrder = byNextWatering.stream().map(Plant::getName).toList();
+        if (names.equals(List.of("Sukulent v koupelně", "Vánoční hvězda bez poznámky", "Zamiokulkas"))
+                && dueOrder.equals(List.of("Vánoční hvězda bez poznámky", "Zamiokulkas", "Sukulent v koupelně"))
+                && plantService.getPlant(0) == first) {
+            DebugManager.print(ConsoleColor.GREEN + "Views by name " + names + " and next watering " + dueOrder);
+        } else {
+            DebugManager.printError("ERROR! Sorted views are out of date: " + names + " " + dueOrder);
+        }
+    }
+
+    private static void testChangeLogRecovery() {
+        DebugManager.printHeader("Testing recovery of plants from change log");
+
+        File snapshotFile = new File("src/main/resources/test-plants-log.snapshot");
+        File logFile = new File("src/main/resources/test-plants.log");
+        snapshotFile.delete();
+        logFile.delete();
+
+        PlantService plantService = new PlantService();
+        plantService.openChangeLog(snapshotFile, logFile, 0);
+        PlantService source = new PlantService();
+        source.loadFromFile("src/main/resources/kvetiny.txt");
+        try {
+            for (Plant plant : source.getPlants()) {
+                plantService.addPlant(plant);
+            }
+            // Second copy of the same plant, logged under its own id, so the edit below is recovered for both
+            plantService.addPlant(plantService.getPlant(1));
+            plantService.waterPlant(plantService.getPlant(0), LocalDate.of(2024, 5, 1));
+            plantService.getPlant(1).setNotes("Přesazena");
+            plantService.compactChangeLog();
+            plantService.getPlant(2).setName("Sukulent přejmenovaný");
+            plantService.removePlant(0);
+            plantService.getPlantCollection().sortPlantsByName();
+        } catch (PlantException e) {
+            DebugManager.printError("ERROR! Exception thrown during change log test: " + e.getMessage());
+        }
+        plantService.closeChangeLog();
+
+        PlantService recovered = new PlantService();
+        recovered.openChangeLog(snapshotFile, logFile, 0);
+        recovered.closeChangeLog();
+        List<String> expected = plantService.getPlants().stream().map(PlantParser::serialize).toList();
+        List<String> actual = recovered.getPlants().stream().map(PlantParser::serialize).toList();
+        if (expected.equals(actual)) {
+            DebugManager.print(ConsoleColor.GREEN + "Change log recovered all " + actual.size() + " plants.");
+        } else {
+            DebugManager.printError("ERROR! Recovered plants differ: " + actual);
+        }
+
+        PlantService loaded = new PlantService();
+        loaded.loadFromFile("src/main/resources/kvetiny.txt");
+        loaded.openChangeLog(snapshotFile, logFile, 0);
+        boolean rejected = loaded.getPlants().size() == 3;
+        loaded.closeChangeLog();
+        try {
+            // Watering of unknown plant fails the replay after plants of the snapshot were recovered,
+            // they must not be left behind
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(payload);
+            record.writeByte(3);
+            record.writeLong(999_999);
+            record.writeLong(LocalDate.of(2024, 6, 1).toEpochDay());
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+            ByteArrayOutputStream framed = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(framed);
+            frame.writeInt(payload.size());
+            frame.writeInt((int) crc.getValue());
+            frame.write(payload.toByteArray());
+            Files.write(logFile.toPath(), framed.toByteArray(), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Change log could not be corrupted: " + e.getMessage());
+        }
+        PlantService failed = new PlantService();
+        failed.openChangeLog(snapshotFile, logFile, 0);
+        failed.closeChangeLog();
+        if (rejected && failed.getPlants().isEmpty()) {
+            DebugManager.print(ConsoleColor.GREEN + "Change log rejected non-empty collection and invalid log.");
+        } else {
+            DebugManager.printError("ERROR! Change log recovered into non-empty collection or after a failure: "
+                    + loaded.getPlants().size() + " " + failed.getPlants());
+        }
+    }
+
+    private static void testServiceMetrics() {
+        DebugManager.printHeader("Testing metrics of service operations");
+
+        PlantService plantService = new PlantService();
+        PlantMetrics metrics = plantService.getMetrics();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        plantService.importFromFile("src/main/resources/kvetiny-spatne-datum.txt", 10);
+        plantService.saveToFile("src/main/resources/test-plants2.txt");
+        plantService.getUnWateredPlants();
+
+        try {
+            metrics.registerMBean("DataTest");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Object saved = server.getAttribute(
+                    new ObjectName("cz.jpcz.houseplants:type=PlantMetrics,name=\"DataTest\""), "PlantsSaved");
+            metrics.unregisterMBean();
+
+            String dump = metrics.dump();
+            if (metrics.getPlantsLoaded() == plantService.getPlants().size() && metrics.getPlantsRejected() > 0
+                    && saved.equals(metrics.getPlantsSaved()) && metrics.getOperationCounts().get("saveToFile") == 1
+                    && dump.contains("houseplants_collection_size " + plantService.getPlants().size())) {
+                DebugManager.print(ConsoleColor.GREEN + "Metrics: loaded " + metrics.getPlantsLoaded()
+                        + ", rejected " + metrics.getPlantsRejected() + ", saved " + saved);
+            } else {
+                DebugManager.printError("ERROR! Unexpected metrics:\n" + dump);
+            }
+        } catch (JMException e) {
+            DebugManager.printError("ERROR! Metrics could not be read through JMX: " + e.getMessage());
+        }
+    }
+
+    private static void testShardedService() {
+        DebugManager.printHeader("Testing sharded service with scatter-gather queries");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        try (ShardedPlantService sharded = new ShardedPlantService(4);
+             ShardedPlantService reloaded = new ShardedPlantService(3);
+             ShardedPlantService reloadedAgain = new ShardedPlantService(4)) {
+            sharded.loadFromFile("src/main/resources/kvetiny.txt");
+            for (int i = 0; i < 12; i++) {
+                Plant plant = new Plant("Bonsaj " + i, Duration.ofDays(1 + i), "", LocalDate.of(2020, 1, 1),
+                        LocalDate.of(2021, 5, 1 + i));
+                sharded.addPlant(plant);
+                plantService.addPlant(plant);
+            }
+            sharded.saveShards(new File("src/main/resources/test-shards"));
+            reloaded.loadShards(new File("src/main/resources/test-shards"));
+            // Fewer shards saved over more, the snapshot of the fourth shard must not be loaded again
+            reloaded.saveShards(new File("src/main/resources/test-shards"));
+            reloadedAgain.loadShards(new File("src/main/resources/test-shards"));
+
+            LocalDate asOf = LocalDate.of(2021, 5, 20);
+            List<LocalDate> expectedDue = plantService.getUnWateredPlants(asOf).stream()
+                    .map(Plant::getNextWateringDate).toList();
+            List<LocalDate> actualDue = sharded.getUnWateredPlants(asOf).stream()
+                    .map(Plant::getNextWateringDate).toList();
+            List<String> expectedNames = plantService.getPlants().stream().map(Plant::getName).sorted().toList();
+            List<String> actualNames = sharded.getPlantsSortedByName().stream().map(Plant::getName).toList();
+            List<String> reloadedNames = reloaded.getPlantsSortedByName().stream().map(Plant::getName).toList();
+            List<String> reloadedAgainNames = reloadedAgain.getPlantsSortedByName().stream().map(Plant::getName).toList();
+            if (expectedDue.equals(actualDue) && expectedNames.equals(actualNames) && expectedNames.equals(reloadedNames)
+                    && expectedNames.equals(reloadedAgainNames)) {
+                DebugManager.print(ConsoleColor.GREEN + "Sharded service matches single service, "
+                        + actualDue.size() + " plants to water on " + asOf);
+            } else {
+                DebugManager.printError("ERROR! Sharded results differ: " + actualDue + " " + actualNames + " " + reloadedNames
+                        + " " + reloadedAgainNames);
+            }
+
+            // Renamed plant stays in its original shard and is still found there, unknown plant is not found
+            Plant moved = new Plant("Jukka", Duration.ofDays(7), LocalDate.of(2021, 5, 1));
+            sharded.addPlant(moved);
+            int shard = sharded.shardOf(moved);
+            do {
+                moved.setName(moved.getName() + "+");
+            } while (sharded.shardOf(moved) == shard);
+            List<WateringOutcome> outcomes = sharded.waterPlants(List.of(
+                    new WateringEvent(moved, LocalDate.of(2021, 5, 10)),
+                    new WateringEvent(new Plant("Kaktus"), LocalDate.of(2021, 5, 10))));
+            int size = sharded.size();
+            sharded.removePlant(moved);
+            if (outcomes.equals(List.of(WateringOutcome.APPLIED, WateringOutcome.NOT_FOUND))
+                    && moved.getLastWateringDate().equals(LocalDate.of(2021, 5, 10)) && sharded.size() == size - 1) {
+                DebugManager.print(ConsoleColor.GREEN + "Plant with changed shard key found in shard " + shard);
+            } else {
+                DebugManager.printError("ERROR! Plant with changed shard key not found: " + outcomes + " " + sharded.size());
+            }
+        } catch (PlantException e) {
+            DebugManager.printError("ERROR! Exception thrown during sharded service test: " + e.getMessage());
+        }
+    }
+
+    private static void testHttpServer() {
+        DebugManager.printHeader("Testing HTTP API with cached reports");
+
+        PlantCollection collection = new PlantCollection();
+        PlantService plantService = new PlantService(collection);
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        long succulentId = collection.getPlantId(collection.getPlantsByName("Sukulent v koupelně").get(0));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        try (PlantHttpServer server = new PlantHttpServer(plantService, 0)) {
+            server.start();
+            String base = "http://localhost:" + server.getPort() + "/plants";
+
+            HttpResponse<String> list = send(client, "GET", base + "?limit=2");
+            HttpResponse<String> unwatered = send(client, "GET", base + "/unwatered?date=2021-05-13");
+            send(client, "GET", base + "/unwatered?date=2021-05-13");
+            long hits = server.getCacheHits();
+            HttpResponse<String> watered = send(client, "POST", base + "/" + succulentId + "/water?date=2021-05-13");
+            HttpResponse<String> afterWatering = send(client, "GET", base + "/unwatered?date=2021-05-13");
+            HttpResponse<String> search = send(client, "GET", base + "/search?notes=fialov%C3%A1");
+            int[] errors = {
+                    send(client, "GET", base + "/999").statusCode(),
+                    send(client, "GET", base + "/abc").statusCode(),
+                    send(client, "GET", base + "/unwatered?date=zitra").statusCode(),
+                    send(client, "DELETE", base + "/" + succulentId).statusCode()
+            };
+
+            if (list.statusCode() == 200 && list.body().startsWith("{\"total\":3,\"offset\":0,")
+                    && list.body().contains("\"name\":\"Vánoční hvězda bez poznámky\"")
+                    && !list.body().contains("Sukulent")
+                    && unwatered.body().contains("\"total\":1,") && unwatered.body().contains("\"id\":" + succulentId)
+                    && hits == 1 && watered.statusCode() == 200 && watered.body().startsWith("{\"outcome\":\"APPLIED\"")
+                    && afterWatering.body().contains("\"total\":0,")
+                    && search.body().contains("Fialka 1") && search.body().contains("\"total\":1,")
+                    && Arrays.equals(errors, new int[] {404, 400, 400, 405})) {
+                DebugManager.print(ConsoleColor.GREEN + "HTTP API served " + server.getCacheHits() + " cached and "
+                        + server.getCacheMisses() + " rendered reports, " + afterWatering.body());
+            } else {
+                DebugManager.printError("ERROR! HTTP API failed: " + list.body() + " " + unwatered.body() + " "
+                        + hits + " " + watered.body() + " " + afterWatering.body() + " " + search.body() + " "
+                        + Arrays.toString(errors));
+            }
+        } catch (IOException e) {
+            DebugManager.printError("ERROR! Exception during HTTP test: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String method, String uri)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private static void testChangeFeed() {
+        DebugManager.printHeader("Testing feed of plant changes");
+
+        PlantService plantService = new PlantService();
+        plantService.loadFromFile("src/main/resources/kvetiny.txt");
+        PlantChangeFeed feed = plantService.getChangeFeed();
+        long start = feed.getLastSequence();
+        ChangeCollector live = new ChangeCollector();
+        plantService.subscribeToChanges(live, start);
+        try {
+            Plant plant = new Plant("Monstera", Duration.ofDays(7), LocalDate.of(2024, 1, 1));
+            plantService.addPlant(plant);
+            plantService.waterPlant(plant, LocalDate.of(2024, 1, 8));
+            plant.setNotes("U okna");
+            plantService.removePlant(plant);
+
+            // Resumes after the first change, as a consumer restarted after processing it
+            ChangeCollector resumed = new ChangeCollector();
+            plantService.subscribeToChanges(resumed, start + 1);
+            List<String> liveChanges = live.await(4);
+            List<String> resumedChanges = resumed.await(3);
+            List<PlantChange> polled = feed.getChangesAfter(start + 3, 10);
+            if (liveChanges.equals(List.of("ADDED null", "WATERED 2024-01-08", "EDITED U okna", "REMOVED null"))
+                    && resumedChanges.equals(liveChanges.subList(1, 4)) && polled.size() == 1
+                    && polled.get(0).sequence() == start + 4 && polled.get(0).type() == PlantChange.Type.REMOVED) {
+                DebugManager.print(ConsoleColor.GREEN + "Changes after sequence " + start + ": " + liveChanges);
+            } else {
+                DebugManager.printError("ERROR! Unexpected changes: " + liveChanges + " " + resumedChanges + " " + polled);
+            }
+        } catch (PlantException e) {
+            DebugManager.printError("ERROR! Exception thrown during change feed test: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Subscriber requesting changes one at a time
+     */
+    private static final class ChangeCollector implements Flow.Subscriber<PlantChange> {
+
+        private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+        @Override
+        public void onNext(PlantChange change) {
+            changes.add(change.type() + " " + change.newValue());
+            subscription.request(1);
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            changes.add("ERROR " + throwable.getMessage());
+        }
+        @Override
+        public void onComplete() {}
+
+        List<String> await(int count) {
+            List<String> received = new ArrayList<>();
+            try {
+                for (int i = 0; i < count; i++) {
+                    String change = changes.poll(5, TimeUnit.SECONDS);
+                    if (change == null) {
+                        break;
+                    }
+                    received.add(change);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscription.cancel();
+            return received;
+        }
+    }
+
     public static void testSortPlantsByName() {
         DebugManager.printHeader("Testing sortPlantsByName method");
 
@@ -222,6 +1277,22 @@ public final class DataTest {
 
         deleteFileIfExists("src/main/resources/new-plants.txt");
         deleteFileIfExists("src/main/resources/test-plants2.txt");
+        deleteFileIfExists("src/main/resources/test-plants3.txt");
+        deleteFileIfExists("src/main/resources/test-plants.snapshot");
+        deleteFileIfExists("src/main/resources/test-plants.txt.gz");
+        deleteFileIfExists("src/main/resources/test-plants-export.txt");
+        deleteFileIfExists("src/main/resources/test-plants-before.txt");
+        deleteFileIfExists("src/main/resources/test-plants-after.txt");
+        deleteFileIfExists("src/main/resources/test-plants-sorted.txt");
+        deleteFileIfExists("src/main/resources/test-plants-log.snapshot");
+        deleteFileIfExists("src/main/resources/test-plants.log");
+        File[] shardFiles = new File("src/main/resources/test-shards").listFiles();
+        if (shardFiles != null) {
+            for (File shardFile : shardFiles) {
+                deleteFileIfExists(shardFile.getPath());
+            }
+        }
+        deleteFileIfExists("src/main/resources/test-shards");
     }
 
     private static void deleteFileIfExists(String fileName) {
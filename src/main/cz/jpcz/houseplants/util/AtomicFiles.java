@@ -0,0 +1,43 @@
+package cz.jpcz.houseplants.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Helpers for files written to a temporary file and then atomically moved over their target
+ */
+public final class AtomicFiles {
+
+    // Permissions of a new file under the usual umask 022
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private AtomicFiles() {}
+
+    /**
+     * Creates a temporary file next to target. Temporary files are created readable by the owner only
+     * and the move keeps that, so the file gets permissions of the existing target, or the usual
+     * permissions of a new file if there is no target yet.
+     * @param target File which the temporary file will replace
+     * @return Empty temporary file in the directory of target, with a unique name, so concurrent
+     *         writers of the same target don't write into each other's temporary file
+     * @throws IOException if the file can't be created
+     */
+    public static Path createTempFile(Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Set<PosixFilePermission> permissions = Files.exists(target)
+                    ? Files.getPosixFilePermissions(target) : DEFAULT_PERMISSIONS;
+            Files.setPosixFilePermissions(temp, permissions);
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, the temporary file has the default permissions of the file system
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+}
@@ -1,36 +1,160 @@
 package cz.jpcz.houseplants.util;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Levelled logging to the console.
+ * <p>
+ * Messages are put into a lock-free ring buffer and written by a background thread, so callers
+ * don't wait for the console. Messages of disabled levels are dropped before they are queued,
+ * use the Supplier overloads or check isDebug() to avoid building them at all.
+ * Headers are logged at INFO level, other messages at DEBUG or ERROR.
+ * Queued messages are written before the JVM exits, flush() waits for them explicitly.
+ */
 public class DebugManager {
-    public static boolean DEBUG = false;
+
+    private static final int BUFFER_CAPACITY = 1 << 14;
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static volatile LogLevel level = LogLevel.ERROR;
+
+    private static final LogRingBuffer buffer = new LogRingBuffer(BUFFER_CAPACITY);
+    private static final Thread writer = new Thread(DebugManager::writeMessages, "debug-manager-writer");
+    private static volatile boolean writerWaiting;
+    private static volatile long writtenMessages;
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(DebugManager::flush, "debug-manager-flush"));
+    }
 
     public static void setDebug(boolean debug) {
-        DEBUG = debug;
+        level = debug ? LogLevel.DEBUG : LogLevel.ERROR;
     }
 
     public static boolean isDebug() {
-        return DEBUG;
+        return level == LogLevel.DEBUG;
+    }
+
+    public static void setLevel(LogLevel level) {
+        DebugManager.level = level;
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled(LogLevel level) {
+        return level.compareTo(DebugManager.level) >= 0;
     }
 
     public static void printHeader(String message) {
-        if (DEBUG) {
-            System.out.println("\n" + ConsoleColor.YELLOW + getFormattedTime() + message + ConsoleColor.RESET);
+        if (isEnabled(LogLevel.INFO)) {
+            enqueue(LogLevel.INFO, message);
         }
     }
 
     public static void print(String message) {
-        if (DEBUG) {
-            System.out.println(getFormattedTime() + message + ConsoleColor.RESET);
+        if (isEnabled(LogLevel.DEBUG)) {
+            enqueue(LogLevel.DEBUG, message);
         }
     }
 
-    private static String getFormattedTime() {
-        return "[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "] ";
+    /**
+     * @param message Supplier of message, called only if debug messages are enabled
+     */
+    public static void print(Supplier<String> message) {
+        if (isEnabled(LogLevel.DEBUG)) {
+            enqueue(LogLevel.DEBUG, message.get());
+        }
     }
 
     public static void printError(String message) {
-        System.out.println(ConsoleColor.RED + getFormattedTime() + message + ConsoleColor.RESET);
+        enqueue(LogLevel.ERROR, message);
+    }
+
+    /**
+     * @param message Supplier of message, called only if the level is enabled
+     */
+    public static void log(LogLevel level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            enqueue(level, message.get());
+        }
+    }
+
+    /**
+     * Blocks until all messages logged so far are written to the console
+     */
+    public static void flush() {
+        long target = buffer.claimed();
+        while (writtenMessages < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static void enqueue(LogLevel level, String message) {
+        long time = System.currentTimeMillis();
+        while (buffer.offer(level, message, time) < 0) {
+            // Buffer is full, wait for the writer instead of dropping the message
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+        }
+        if (writerWaiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void writeMessages() {
+        LogRingBuffer.Message message = new LogRingBuffer.Message();
+        StringBuilder output = new StringBuilder(8192);
+        long written = 0;
+        long cachedSecond = Long.MIN_VALUE;
+        String cachedTime = "";
+
+        while (true) {
+            while (buffer.poll(message)) {
+                long second = Math.floorDiv(message.timeMillis, 1000);
+                if (second != cachedSecond) {
+                    cachedSecond = second;
+                    cachedTime = "[" + TIME_FORMATTER.format(LocalDateTime.ofInstant(
+                            Instant.ofEpochSecond(second), ZoneId.systemDefault())) + "] ";
+                }
+                format(message, cachedTime, output);
+                written++;
+                if (output.length() >= 64 * 1024) {
+                    System.out.print(output);
+                    output.setLength(0);
+                }
+            }
+            if (!output.isEmpty()) {
+                System.out.print(output);
+                output.setLength(0);
+            }
+            System.out.flush();
+            writtenMessages = written;
+
+            writerWaiting = true;
+            // Checked again after announcing the wait, so a message published meanwhile is not missed
+            if (!buffer.isReady()) {
+                LockSupport.park();
+            }
+            writerWaiting = false;
+        }
+    }
+
+    private static void format(LogRingBuffer.Message message, String time, StringBuilder output) {
+        switch (message.level) {
+            case INFO -> output.append('\n').append(ConsoleColor.YELLOW).append(time);
+            case ERROR -> output.append(ConsoleColor.RED).append(time);
+            default -> output.append(time);
+        }
+        output.append(message.text).append(ConsoleColor.RESET).append(System.lineSeparator());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package cz.jpcz.houseplants.util;
+
+/**
+ * Levels of log messages, ordered from the most verbose
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    ERROR
+}
@@ -0,0 +1,103 @@
+package cz.jpcz.houseplants.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of log messages with many producers and a single consumer.
+ * <p>
+ * Every slot has a sequence number telling whether it is free for the producer claiming position p
+ * (sequence == p) or holds a message ready for the consumer (sequence == p + 1). Producers claim
+ * positions with a CAS on the tail, the consumer frees slots by moving their sequence a lap ahead.
+ */
+class LogRingBuffer {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final LogLevel[] levels;
+    private final String[] messages;
+    private final long[] times;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    LogRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        levels = new LogLevel[capacity];
+        messages = new String[capacity];
+        times = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds message unless the buffer is full
+     * @return Position of the message, or -1 if the buffer is full
+     */
+    long offer(LogLevel level, String message, long timeMillis) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[slot] = level;
+                    messages[slot] = message;
+                    times[slot] = timeMillis;
+                    // Publishes the slot, writes above happen-before the consumer reads it
+                    sequences.set(slot, position + 1);
+                    return position;
+                }
+            } else if (difference < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Consumer only. Removes the oldest message if it is ready.
+     * @param target Receives the message, its level and time
+     * @return true if a message was taken
+     */
+    boolean poll(Message target) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        target.level = levels[slot];
+        target.text = messages[slot];
+        target.timeMillis = times[slot];
+        messages[slot] = null;
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * Consumer only
+     * @return true if the oldest message is ready to be polled
+     */
+    boolean isReady() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    /**
+     * @return Number of positions claimed by producers so far
+     */
+    long claimed() {
+        return tail.get();
+    }
+
+    /**
+     * Reusable holder of a polled message
+     */
+    static final class Message {
+        LogLevel level;
+        String text;
+        long timeMillis;
+    }
+}
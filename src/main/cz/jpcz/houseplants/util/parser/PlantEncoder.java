@@ -0,0 +1,149 @@
+package cz.jpcz.houseplants.util.parser;
+
+import cz.jpcz.houseplants.model.Plant;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Encodes plants as lines in the PlantParser format straight into a reusable byte buffer,
+ * without building a String per plant. Output is byte for byte the same as
+ * PlantParser.serialize of each plant encoded in UTF-8, followed by a line feed.
+ */
+public class PlantEncoder {
+
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final OutputStream output;
+    private byte[] buffer;
+    private int position;
+
+    /**
+     * @param output Stream the buffer is flushed to when full
+     */
+    public PlantEncoder(OutputStream output) {
+        this.output = output;
+        this.buffer = new byte[DEFAULT_CAPACITY];
+    }
+
+    public void encode(Plant plant) throws IOException {
+        encode(plant.getName(), plant.getNotes(), plant.getWateringInterval().toDays(),
+                plant.getLastWateringDate(), plant.getPlantedDate());
+    }
+
+    /**
+     * Encodes one line from plant values
+     */
+    public void encode(String name, String notes, long wateringIntervalDays, LocalDate lastWateringDate,
+                       LocalDate plantedDate) throws IOException {
+        putString(name);
+        putByte('\t');
+        putString(notes);
+        putByte('\t');
+        putLong(wateringIntervalDays);
+        putByte('\t');
+        putDate(lastWateringDate);
+        putByte('\t');
+        putDate(plantedDate);
+        putByte('\n');
+    }
+
+    /**
+     * Writes buffered bytes to the output stream, does not flush the stream itself
+     */
+    public void flush() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            flush();
+            if (buffer.length < bytes) {
+                buffer = new byte[bytes];
+            }
+        }
+    }
+
+    private void putByte(char c) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void putString(String string) throws IOException {
+        if (string == null) {
+            string = "null";
+        }
+        int length = string.length();
+        ensureCapacity(length);
+        int start = position;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                // Not ASCII, encode the whole string by the JDK
+                position = start;
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+                return;
+            }
+            buffer[position++] = (byte) c;
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        ensureCapacity(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    /**
+     * Writes date as yyyy-MM-dd, years outside 0..9999 in the format of LocalDate.toString
+     */
+    private void putDate(LocalDate date) throws IOException {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            putAscii(date.toString());
+            return;
+        }
+        ensureCapacity(10);
+        putDigits(year, 4);
+        buffer[position++] = '-';
+        putDigits(date.getMonthValue(), 2);
+        buffer[position++] = '-';
+        putDigits(date.getDayOfMonth(), 2);
+    }
+
+    private void putDigits(int value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void putAscii(String string) throws IOException {
+        ensureCapacity(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            buffer[position++] = (byte) string.charAt(i);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import cz.jpcz.houseplants.model.Plant;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
@@ -14,6 +15,21 @@ import java.time.format.DateTimeParseException;
 public class PlantParser {
 
     private static final String DELIMITER = "\t";
+    private static final char DELIMITER_CHAR = '\t';
+    private static final int FIELD_COUNT = 5;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /**
+     * Watering intervals are mostly short, so the common ones are shared instead of allocated per row
+     */
+    private static final Duration[] CACHED_INTERVALS = new Duration[366];
+    static {
+        for (int i = 0; i < CACHED_INTERVALS.length; i++) {
+            CACHED_INTERVALS[i] = Duration.ofDays(i);
+        }
+    }
 
     /**
      * Constructs Plant from string
@@ -22,24 +38,53 @@ public class PlantParser {
      * @throws PlantException if string can't be parsed
      */
     public static Plant deserialize(String string) throws PlantException {
-        String[] args = string.split(DELIMITER);
-        if (args.length != 5) {
-            throw new PlantException("Illegal number of arguments for Plant constructor(" + args.length + "): " + string);
+        return deserialize(string, 0, string.length());
+    }
+
+    /**
+     * Constructs Plant from a line inside a larger character sequence without copying it.
+     * Only name and notes are allocated as new strings for well-formed lines;
+     * malformed lines produce the same exceptions as {@link #deserialize(String)}.
+     * @param chars Characters containing the line
+     * @param start Index of the first character of the line
+     * @param end Index after the last character of the line
+     * @return Constructed Plant
+     * @throws PlantException if line can't be parsed
+     */
+    public static Plant deserialize(CharSequence chars, int start, int end) throws PlantException {
+        // Tab offsets of the five fields, the same fields String.split(DELIMITER) would return
+        int tab0 = -1, tab1 = -1, tab2 = -1, tab3 = -1;
+        int tabs = 0;
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == DELIMITER_CHAR) {
+                switch (tabs) {
+                    case 0 -> tab0 = i;
+                    case 1 -> tab1 = i;
+                    case 2 -> tab2 = i;
+                    case 3 -> tab3 = i;
+                    default -> { }
+                }
+                tabs++;
+            }
+        }
+        int fields = countSplitFields(chars, start, end, tabs);
+        if (fields != FIELD_COUNT) {
+            throw new PlantException("Illegal number of arguments for Plant constructor(" + fields + "): "
+                    + line(chars, start, end));
         }
+
         try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            Duration wateringInterval = Duration.ofDays(Integer.parseInt(args[2].trim()));
-            LocalDate plantedDate = LocalDate.parse(args[4].trim(), formatter);
-            LocalDate lastWateringDate = LocalDate.parse(args[3].trim(), formatter);
-            return new Plant(args[0].trim(), wateringInterval, args[1].trim(), plantedDate, lastWateringDate);
+            Duration wateringInterval = toDuration(parseInt(chars, tab1 + 1, tab2));
+            LocalDate plantedDate = parseDate(chars, tab3 + 1, end);
+            LocalDate lastWateringDate = parseDate(chars, tab2 + 1, tab3);
+            return new Plant(trimmed(chars, start, tab0), wateringInterval, trimmed(chars, tab0 + 1, tab1),
+                    plantedDate, lastWateringDate);
         } catch (NumberFormatException e) {
-            throw new PlantException("Failed to parse watering interval: " + string);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new PlantException("Illegal number of arguments for Plant constructor(" + args.length + "): " + string);
+            throw new PlantException("Failed to parse watering interval: " + line(chars, start, end));
         } catch (DateTimeParseException e) {
-            throw new PlantException("Failed to parse date: " + string + e);
+            throw new PlantException("Failed to parse date: " + line(chars, start, end) + e);
         } catch (PlantException e) {
-            throw new PlantException("Failed to create Plant: " + string + e);
+            throw new PlantException("Failed to create Plant: " + line(chars, start, end) + e);
         }
     }
 
@@ -52,4 +97,115 @@ public class PlantParser {
         return plant.getName() + DELIMITER + plant.getNotes() + DELIMITER + plant.getWateringInterval().toDays()
                 + DELIMITER + plant.getLastWateringDate() + DELIMITER + plant.getPlantedDate();
     }
+
+    /**
+     * Number of fields String.split would return, which drops all trailing empty fields
+     */
+    private static int countSplitFields(CharSequence chars, int start, int end, int tabs) {
+        if (tabs == 0) {
+            return 1;
+        }
+        int trailingTabs = 0;
+        while (trailingTabs < end - start && chars.charAt(end - 1 - trailingTabs) == DELIMITER_CHAR) {
+            trailingTabs++;
+        }
+        if (trailingTabs == end - start) {
+            return 0;
+        }
+        return tabs + 1 - trailingTabs;
+    }
+
+    private static String line(CharSequence chars, int start, int end) {
+        return chars.subSequence(start, end).toString();
+    }
+
+    private static int trimStart(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence chars, int start, int end) {
+        while (end > start && chars.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static String trimmed(CharSequence chars, int start, int end) {
+        int from = trimStart(chars, start, end);
+        return chars.subSequence(from, trimEnd(chars, from, end)).toString();
+    }
+
+    private static Duration toDuration(int days) {
+        return days >= 0 && days < CACHED_INTERVALS.length ? CACHED_INTERVALS[days] : Duration.ofDays(days);
+    }
+
+    /**
+     * Same as Integer.parseInt of the trimmed field, falling back to it for anything but ASCII digits
+     */
+    private static int parseInt(CharSequence chars, int start, int end) {
+        int from = trimStart(chars, start, end);
+        int to = trimEnd(chars, from, end);
+        int i = from;
+        boolean negative = false;
+        if (i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+            negative = chars.charAt(i) == '-';
+            i++;
+        }
+        if (i == to || to - i > 10) {
+            return Integer.parseInt(line(chars, from, to));
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(line(chars, from, to));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range: " + line(chars, from, to));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses trimmed yyyy-MM-dd field directly from characters. Anything that is not a plain valid
+     * date is left to the formatter, so resolving and error messages stay the same.
+     */
+    private static LocalDate parseDate(CharSequence chars, int start, int end) {
+        int from = trimStart(chars, start, end);
+        int to = trimEnd(chars, from, end);
+        if (to - from == 10 && chars.charAt(from + 4) == '-' && chars.charAt(from + 7) == '-') {
+            int year = digits(chars, from, from + 4);
+            int month = digits(chars, from + 5, from + 7);
+            int day = digits(chars, from + 8, from + 10);
+            if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(line(chars, from, to), FORMATTER);
+    }
+
+    /**
+     * @return Value of ASCII digits, or -1 if any character is not an ASCII digit
+     */
+    private static int digits(CharSequence chars, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return month == 2 && Year.isLeap(year) ? 29 : DAYS_IN_MONTH[month - 1];
+    }
 }
@@ -0,0 +1,253 @@
+package cz.jpcz.houseplants.util.parser;
+
+import cz.jpcz.houseplants.exceptions.PlantException;
+import cz.jpcz.houseplants.model.Plant;
+import cz.jpcz.houseplants.util.AtomicFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Versioned binary snapshot of plants
+ * <pre>
+ * header  - magic, version, plant count, reserved int, heap offset (long)
+ * records - fixed-width record per plant: planted epoch day, last watering epoch day,
+ *           watering interval in days, name offset and length, notes offset and length
+ * ids     - (version 2 only) long identifier of each plant in record order
+ * heap    - UTF-8 bytes of names and notes, offsets are relative to heap start
+ * </pre>
+ * Dates are limited to years 1 to 9999, which the text format can hold as well.
+ */
+public class PlantSnapshot {
+
+    private static final int MAGIC = 0x4850534E; // "HPSN"
+    private static final int VERSION = 1;
+    private static final int VERSION_WITH_IDS = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 7 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_EPOCH_DAY = LocalDate.of(1, 1, 1).toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private PlantSnapshot() {}
+
+    /**
+     * Plants read from snapshot
+     * @param plants Plants in the order they were written
+     * @param ids Identifiers of plants in the same order, null if snapshot was written without them
+     */
+    public record Contents(List<Plant> plants, long[] ids) {}
+
+    /**
+     * Writes plants to snapshot file. Data are written to a temporary file first,
+     * which then replaces the target, so the target is never left half-written.
+     * @param plants Plants to write
+     * @param file Target file
+     * @throws IOException if file can't be written
+     * @throws PlantException if a plant can't be represented in snapshot
+     */
+    public static void write(Collection<Plant> plants, File file) throws IOException, PlantException {
+        write(plants, null, file);
+    }
+
+    /**
+     * Writes plants together with their identifiers to snapshot file
+     * @param plants Plants to write
+     * @param ids Identifier of each plant in iteration order of plants, or null
+     * @param file Target file
+     * @throws IOException if file can't be written
+     * @throws PlantException if a plant can't be represented in snapshot
+     */
+    public static void write(Collection<Plant> plants, long[] ids, File file) throws IOException, PlantException {
+        if (ids != null && ids.length != plants.size()) {
+            throw new IllegalArgumentException("Number of ids does not match number of plants.");
+        }
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = AtomicFiles.createTempFile(target);
+        long idsStart = HEADER_SIZE + (long) plants.size() * RECORD_SIZE;
+        long heapStart = idsStart + (ids != null ? (long) ids.length * Long.BYTES : 0);
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC).putInt(ids != null ? VERSION_WITH_IDS : VERSION).putInt(plants.size()).putInt(0)
+                        .putLong(heapStart)
+                        .flip();
+                writeFully(channel, header, 0);
+                if (ids != null) {
+                    ByteBuffer idBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    long idPosition = idsStart;
+                    for (long id : ids) {
+                        if (!idBuffer.hasRemaining()) {
+                            idPosition += writeFully(channel, idBuffer.flip(), idPosition);
+                            idBuffer.clear();
+                        }
+                        idBuffer.putLong(id);
+                    }
+                    writeFully(channel, idBuffer.flip(), idPosition);
+                }
+
+                ByteBuffer records = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                ByteBuffer heap = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                long recordPosition = HEADER_SIZE;
+                long heapPosition = heapStart;
+                long heapSize = 0;
+
+                for (Plant plant : plants) {
+                    byte[] name = plant.getName().getBytes(StandardCharsets.UTF_8);
+                    byte[] notes = plant.getNotes().getBytes(StandardCharsets.UTF_8);
+                    long intervalDays = plant.getWateringInterval().toDays();
+                    long plantedDay = plant.getPlantedDate().toEpochDay();
+                    long lastWateringDay = plant.getLastWateringDate().toEpochDay();
+                    if (intervalDays > Integer.MAX_VALUE || heapSize + name.length + notes.length > Integer.MAX_VALUE
+                            || !isEpochDayInRange(plantedDay) || !isEpochDayInRange(lastWateringDay)) {
+                        throw new PlantException("Plant can't be stored in snapshot: " + PlantParser.serialize(plant));
+                    }
+
+                    if (records.remaining() < RECORD_SIZE) {
+                        recordPosition += writeFully(channel, records.flip(), recordPosition);
+                        records.clear();
+                    }
+                    records.putInt((int) plantedDay)
+                            .putInt((int) lastWateringDay)
+                            .putInt((int) intervalDays)
+                            .putInt((int) heapSize).putInt(name.length)
+                            .putInt((int) (heapSize + name.length)).putInt(notes.length);
+
+                    for (byte[] bytes : new byte[][] {name, notes}) {
+                        int offset = 0;
+                        while (offset < bytes.length) {
+                            if (!heap.hasRemaining()) {
+                                heapPosition += writeFully(channel, heap.flip(), heapPosition);
+                                heap.clear();
+                            }
+                            int length = Math.min(heap.remaining(), bytes.length - offset);
+                            heap.put(bytes, offset, length);
+                            offset += length;
+                        }
+                        heapSize += bytes.length;
+                    }
+                }
+                writeFully(channel, records.flip(), recordPosition);
+                writeFully(channel, heap.flip(), heapPosition);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads plants from memory-mapped snapshot file
+     * @param file Snapshot file
+     * @return Plants in the order they were written
+     * @throws IOException if file can't be read
+     * @throws PlantException if file is not a valid snapshot
+     */
+    public static List<Plant> read(File file) throws IOException, PlantException {
+        return readContents(file).plants();
+    }
+
+    /**
+     * Reads plants and their identifiers (if present) from memory-mapped snapshot file
+     * @param file Snapshot file
+     * @return Plants and identifiers
+     * @throws IOException if file can't be read
+     * @throws PlantException if file is not a valid snapshot
+     */
+    public static Contents readContents(File file) throws IOException, PlantException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new PlantException("Snapshot is too large to be mapped: " + file);
+            }
+            if (channel.size() < HEADER_SIZE) {
+                throw new PlantException("File is not a plant snapshot: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new PlantException("File is not a plant snapshot: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION && version != VERSION_WITH_IDS) {
+                throw new PlantException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int count = buffer.getInt(8);
+            long heapStart = buffer.getLong(16);
+            long idsStart = HEADER_SIZE + (long) count * RECORD_SIZE;
+            long idsSize = version == VERSION_WITH_IDS ? (long) count * Long.BYTES : 0;
+            if (count < 0 || heapStart != idsStart + idsSize || heapStart > buffer.limit()) {
+                throw new PlantException("Corrupted snapshot header: " + file);
+            }
+
+            long[] ids = null;
+            if (version == VERSION_WITH_IDS) {
+                ids = new long[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = buffer.getLong((int) idsStart + i * Long.BYTES);
+                }
+            }
+
+            List<Plant> plants = new ArrayList<>(count);
+            byte[] scratch = new byte[256];
+            int heapSize = buffer.limit() - (int) heapStart;
+            for (int i = 0; i < count; i++) {
+                int record = HEADER_SIZE + i * RECORD_SIZE;
+                int plantedDay = buffer.getInt(record);
+                int lastWateringDay = buffer.getInt(record + 4);
+                int nameOffset = buffer.getInt(record + 12);
+                int nameLength = buffer.getInt(record + 16);
+                int notesOffset = buffer.getInt(record + 20);
+                int notesLength = buffer.getInt(record + 24);
+                if (!isEpochDayInRange(plantedDay) || !isEpochDayInRange(lastWateringDay)
+                        || !isInHeap(nameOffset, nameLength, heapSize) || !isInHeap(notesOffset, notesLength, heapSize)) {
+                    throw new PlantException("Corrupted snapshot record " + i + ": " + file);
+                }
+                Duration wateringInterval = Duration.ofDays(buffer.getInt(record + 8));
+                String name = readString(buffer, (int) heapStart, nameOffset, nameLength, scratch);
+                String notes = readString(buffer, (int) heapStart, notesOffset, notesLength, scratch);
+                plants.add(new Plant(name, wateringInterval, notes, LocalDate.ofEpochDay(plantedDay),
+                        LocalDate.ofEpochDay(lastWateringDay)));
+            }
+            return new Contents(plants, ids);
+        } catch (IndexOutOfBoundsException e) {
+            throw new PlantException("Corrupted snapshot: " + file);
+        }
+    }
+
+    private static boolean isEpochDayInRange(long epochDay) {
+        return epochDay >= MIN_EPOCH_DAY && epochDay <= MAX_EPOCH_DAY;
+    }
+
+    private static boolean isInHeap(int offset, int length, int heapSize) {
+        return offset >= 0 && length >= 0 && (long) offset + length <= heapSize;
+    }
+
+    private static String readString(ByteBuffer buffer, int heapStart, int offset, int length, byte[] scratch) {
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(heapStart + offset, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}